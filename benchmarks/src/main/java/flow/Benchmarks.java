@@ -0,0 +1,84 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import flow.modules.*;
+
+/**
+   Shared setup for the JMH benchmarks.  The engine's sizes (partials, voices, and so on) are
+   read from the Prefs when Output and Unit are first loaded, so configure() must be called
+   before anything touches those classes.  JMH runs each combination of parameters in its
+   own forked JVM, so this is safe to do in a @Setup method.
+**/
+
+public class Benchmarks
+    {
+    /** Sets the Prefs which Output and Unit read when they are loaded.  This must be called before either class is touched. */
+    public static void configure(int numPartials, int numVoices)
+        {
+        System.setProperty("java.awt.headless", "true");
+        System.setProperty("NumPartials", "" + numPartials);
+        System.setProperty("Voices", "" + numVoices);
+        System.setProperty("OneVoice", "false");
+        System.setProperty("Stereo", "true");
+        }
+
+    /** Converts "LOW", "MEDIUM", "HIGH", or "RECURSIVE" to an Output.SIN_QUALITY constant. */
+    public static int sinQuality(String name)
+        {
+        if (name.equals("LOW")) return Output.SIN_QUALITY_LOW;
+        else if (name.equals("MEDIUM")) return Output.SIN_QUALITY_MEDIUM;
+        else if (name.equals("HIGH")) return Output.SIN_QUALITY_HIGH;
+        else if (name.equals("RECURSIVE")) return Output.SIN_QUALITY_RECURSIVE;
+        else throw new IllegalArgumentException("Unknown sine quality " + name);
+        }
+
+    /** Converts "SCALAR", "VECTOR", "BLOCK", or "SPECTRAL" to an Output.ENGINE constant. */
+    public static int engine(String name)
+        {
+        if (name.equals("SCALAR")) return Output.ENGINE_SCALAR;
+        else if (name.equals("VECTOR")) return Output.ENGINE_VECTOR;
+        else if (name.equals("BLOCK")) return Output.ENGINE_BLOCK;
+        else if (name.equals("SPECTRAL")) return Output.ENGINE_SPECTRAL;
+        else throw new IllegalArgumentException("Unknown engine " + name);
+        }
+
+    /** Builds an offline Output with its full complement of Sounds. */
+    public static Output buildOutput()
+        {
+        Output output = new Output(true);
+        for(int i = 0; i < Output.getNumVoices(); i++)
+            {
+            Sound sound = new Sound(output);
+            new Out(sound);
+            sound.reset();
+            }
+        return output;
+        }
+
+    /** Loads a sawtooth-like spectrum, at a different pitch for each voice, into the partials the
+        Output is currently rendering from.  Every partial is audible, so nothing is skipped. */
+    public static void loadPartials(Output output, boolean dephase)
+        {
+        PartialFrame saw = new PartialFrame();
+        for(int i = 0; i < Unit.NUM_PARTIALS; i++)
+            {
+            saw.amplitudes[i] = 1.0 / (i + 1);
+            saw.frequencies[i] = i + 1;
+            }
+
+        Output.Swap with = output.with;
+        for(int v = 0; v < with.partials.length; v++)
+            {
+            with.partials[v].copyFrom(saw);
+            with.pitches[v] = 110.0 * (1.0 + v / 12.0);
+            with.velocities[v] = 1.0;
+            with.pan[v] = 0.5;
+            with.dephase[v] = dephase;
+            with.reset[v] = false;
+            output.packPartials(v);
+            }
+        }
+    }
@@ -0,0 +1,53 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures Output.buildSample(), the innermost loop of the engine, in samples per second
+   for a single voice.  Multiply by the number of voices and divide by 44100 to get a rough
+   idea of how much of one core a full patch needs.
+**/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BuildSampleBenchmark
+    {
+    @Param({"64", "128", "256"})
+    int partials;
+
+    @Param({"false", "true"})
+    boolean dephase;
+
+    @Param({"LOW", "MEDIUM", "HIGH", "RECURSIVE"})
+    String sinQuality;
+
+    Output output;
+    double[][] currentAmplitudes;
+    int voice;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        Benchmarks.configure(partials, Output.DEFAULT_NUM_VOICES);
+        output = Benchmarks.buildOutput();
+        Benchmarks.loadPartials(output, dephase);
+        Output.sinQuality = Benchmarks.sinQuality(sinQuality);
+        currentAmplitudes = new double[Output.getNumVoices()][Unit.NUM_PARTIALS];
+        output.updateRotations(voice);          // normally done once per block, but the partials don't change here
+        }
+
+    @Benchmark
+    public double buildSample()
+        {
+        return output.buildSample(voice, currentAmplitudes);
+        }
+    }
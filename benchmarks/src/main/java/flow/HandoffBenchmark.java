@@ -0,0 +1,122 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures the latency distribution of a round trip between two threads: the benchmark thread
+   hands work to a worker thread, as the Sound Output thread does to each per-output thread once
+   a block, and waits for it to be handed back.  monitor is the old synchronized / wait() / notify()
+   handoff, run once; handoff is flow.Handoff, run with each spin budget (which is ignored on a single processor).
+   Look at the p0.50, p0.99, and p0.999 lines of the output.
+**/
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class HandoffBenchmark
+    {
+    /** The monitor-based handoff Output used to use, kept here for comparison. */
+    static class Monitor
+        {
+        Object lock = new Object[0];
+        boolean value = true;
+
+        void await(boolean val)
+            {
+            synchronized(lock)
+                {
+                while(value != val)
+                    {
+                    try { lock.wait(); } catch (Exception e) { }
+                    }
+                }
+            }
+
+        void signal(boolean val)
+            {
+            synchronized(lock)
+                {
+                value = val;
+                lock.notify();
+                }
+            }
+        }
+
+    /** A worker thread which hands back whatever it is handed, until it is stopped. */
+    static abstract class Worker
+        {
+        Thread thread;
+        volatile boolean running;
+
+        abstract void roundTrip();
+        abstract void echo();
+
+        void start()
+            {
+            running = true;
+            thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    while(running) echo();
+                    }
+                });
+            thread.setDaemon(true);
+            thread.start();
+            }
+
+        void stop()
+            {
+            running = false;
+            thread.interrupt();
+            }
+        }
+
+    /** The monitor handoff: the spin budget doesn't apply, so it has no parameters. */
+    @State(Scope.Benchmark)
+    public static class MonitorState extends Worker
+        {
+        Monitor monitor = new Monitor();
+
+        void roundTrip() { monitor.signal(false); monitor.await(true); }
+        void echo() { monitor.await(false); monitor.signal(true); }
+
+        @Setup(Level.Trial) public void setup() { start(); }
+        @TearDown(Level.Trial) public void tearDown() { stop(); }
+        }
+
+    /** flow.Handoff, with each spin budget. */
+    @State(Scope.Benchmark)
+    public static class HandoffState extends Worker
+        {
+        @Param({"0", "1000"})
+        int spins;
+
+        Handoff handoff;
+
+        void roundTrip() { handoff.signal(false); handoff.await(true); }
+        void echo() { handoff.await(false); handoff.signal(true); }
+
+        @Setup(Level.Trial) public void setup() { handoff = new Handoff(true, spins); start(); }
+        @TearDown(Level.Trial) public void tearDown() { stop(); }
+        }
+
+    @Benchmark
+    public void monitor(MonitorState state)
+        {
+        state.roundTrip();
+        }
+
+    @Benchmark
+    public void handoff(HandoffState state)
+        {
+        state.roundTrip();
+        }
+    }
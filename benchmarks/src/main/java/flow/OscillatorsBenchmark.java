@@ -0,0 +1,54 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures one voice's block of samples, as built by each engine, in nanoseconds per block.
+   Unlike RenderBlockBenchmark this builds the engines directly, so the spectral engine is measured 
+   even below the spectral threshold (Prefs.getLastSpectralThreshold()), which is what this is for: the
+   threshold should be the fewest partials at which SPECTRAL is faster than SCALAR, which is what we fall 
+   back to below it.  Every partial is audible, as in a bright, full spectrum.
+**/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class OscillatorsBenchmark
+    {
+    @Param({"64", "128", "256"})
+    int partials;
+
+    @Param({"SCALAR", "BLOCK", "SPECTRAL"})
+    String engine;
+
+    Output output;
+    double[] samples;
+    int voice;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        Benchmarks.configure(partials, Output.DEFAULT_NUM_VOICES);
+        output = Benchmarks.buildOutput();
+        Benchmarks.loadPartials(output, false);
+        int e = Benchmarks.engine(engine);
+        output.oscillators = (e == Output.ENGINE_BLOCK ? new BlockOscillators(output) :
+            (e == Output.ENGINE_SPECTRAL ? new SpectralOscillators(output, Output.getSkip(), 0) : null));
+        samples = new double[Output.getSkip()];
+        }
+
+    @Benchmark
+    public double[] buildSamples()
+        {
+        output.buildSamples(voice, samples);
+        return samples;
+        }
+    }
@@ -0,0 +1,66 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures Output.renderBlock(), that is, the full cost of one block of audio as paid by the
+   Sound Output thread: building the samples for every voice on the per-output threads (with
+   the scalar, vector, block, or spectral engine), the stereo mix, FreeVerb, and 16-bit packing, 
+   for each sine quality, with and without dephasing.  That's a lot of combinations: narrow them
+   down with -p, for example <tt>-p engine=SCALAR -p voices=16</tt>.
+   The score is in blocks per second; each block is Output.getSkip() samples, so the engine 
+   keeps up in real time as long as the score stays above 44100 / skip (about 1378 blocks per 
+   second at the default skip of 32).
+**/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RenderBlockBenchmark
+    {
+    @Param({"64", "128", "256"})
+    int partials;
+
+    @Param({"8", "16"})
+    int voices;
+
+    @Param({"false", "true"})
+    boolean reverb;
+
+    @Param({"false", "true"})
+    boolean dephase;
+
+    @Param({"LOW", "MEDIUM", "HIGH", "RECURSIVE"})
+    String sinQuality;
+
+    @Param({"SCALAR", "VECTOR", "BLOCK", "SPECTRAL"})
+    String engine;
+
+    Output output;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        Benchmarks.configure(partials, voices);
+        Output.engine = Benchmarks.engine(engine);
+        output = Benchmarks.buildOutput();
+        Benchmarks.loadPartials(output, dephase);
+        Output.sinQuality = Benchmarks.sinQuality(sinQuality);
+        output.with.reverbWet = (reverb ? 0.5f : 0.0f);
+        }
+
+    @Benchmark
+    public byte[] renderBlock()
+        {
+        output.renderBlock();
+        return output.getAudioBuffer();
+        }
+    }
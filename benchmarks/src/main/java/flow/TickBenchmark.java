@@ -0,0 +1,80 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures the cost of reading the sample clock while another thread advances it, as the voice
+   threads read Output's tick while the Sound Output thread counts it.  VOLATILE_INT is the old
+   tick, written every sample; VOLATILE_LONG is the obvious 64-bit replacement; RELEASE_ACQUIRE is what
+   Output does now, a plain long counted every sample and published once per block with a release
+   write and read with an acquire read; and PLAIN is an unsynchronized read, as a floor.
+   The writer runs in its own thread, so the reads see real cache traffic.
+**/
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TickBenchmark
+    {
+    static final int BLOCK = 32;
+    
+    volatile int volatileInt;
+    volatile long volatileLong;
+    long counted;
+    long published;
+    long plain;
+
+    static final VarHandle PUBLISHED;
+    static
+        {
+        try
+            {
+            PUBLISHED = MethodHandles.lookup().findVarHandle(TickBenchmark.class, "published", long.class);
+            }
+        catch (ReflectiveOperationException ex)
+            {
+            throw new ExceptionInInitializerError(ex);
+            }
+        }
+
+    // Writers: one block's worth of samples per call
+    
+    @Benchmark @org.openjdk.jmh.annotations.Group("VOLATILE_INT") @GroupThreads(1)
+    public void writeVolatileInt() { for(int i = 0; i < BLOCK; i++) volatileInt++; }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("VOLATILE_LONG") @GroupThreads(1)
+    public void writeVolatileLong() { for(int i = 0; i < BLOCK; i++) volatileLong++; }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("RELEASE_ACQUIRE") @GroupThreads(1)
+    public void writeReleaseAcquire()
+        {
+        for(int i = 0; i < BLOCK; i++) counted++;
+        PUBLISHED.setRelease(this, counted);
+        }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("PLAIN") @GroupThreads(1)
+    public void writePlain() { for(int i = 0; i < BLOCK; i++) plain++; }
+
+    // Readers
+    
+    @Benchmark @org.openjdk.jmh.annotations.Group("VOLATILE_INT") @GroupThreads(1)
+    public int readVolatileInt() { return volatileInt; }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("VOLATILE_LONG") @GroupThreads(1)
+    public long readVolatileLong() { return volatileLong; }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("RELEASE_ACQUIRE") @GroupThreads(1)
+    public long readReleaseAcquire() { return (long)PUBLISHED.getAcquire(this); }
+
+    @Benchmark @org.openjdk.jmh.annotations.Group("PLAIN") @GroupThreads(1)
+    public long readPlain() { return plain; }
+    }
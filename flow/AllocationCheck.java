@@ -0,0 +1,375 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import javax.sound.midi.*;
+
+/**
+   AllocationCheck loads patches offline, as Render does, plays a fixed pattern of chords through them, and
+   checks that once the JIT has warmed up, the audio engine doesn't allocate anything per block.  Any
+   allocation on these threads eventually means a garbage collection, and a garbage collection in the middle
+   of a performance means a dropout.
+
+   <p>Usage: <tt>java flow.AllocationCheck [blocks [patch.flow ...]]</tt>
+
+   <p>BLOCKS is the number of blocks to measure (default 5000), after WARMUP times as many (but at least
+   MIN_WARMUP_BLOCKS) to warm up.  Until the JIT has settled down it allocates now and then on its own: 
+   deoptimizing a method may allocate objects which the optimized code didn't need to, and compiling a method 
+   resolves its String constants, which allocates them on whatever thread asked for the compile.  These happen 
+   once, not every block, so if a patch allocates we measure it again, up to MEASUREMENTS times in all, and 
+   report the last measurement.  If no
+   patches are given, every patch in flow/patches is checked.  For each patch we report the total bytes
+   allocated while measuring by Output.go() (the voice pass), by Output.renderBlock() (the output pass), by the
+   Voice and Output threads which help them, and by the MIDI note dispatch, which is reported but not
+   counted against the patch.  If the voice pass allocates, we then run a few more blocks, updating each
+   Sound's modules one by one, and report which modules allocated, along with Input.go() and Output.lock(), which
+   Output.go() calls outside of the modules.  Whatever we can't pin on any of these is reported as unattributed.
+   JFR events aren't enabled here, so they don't allocate.  The exit status is 0 if no patch
+   allocated and 1 otherwise, so this can be run as part of a build.
+
+   <p>Allocation is measured with com.sun.management.ThreadMXBean, so this needs a JVM which supports it
+   (OpenJDK and its derivatives do).
+**/
+
+public class AllocationCheck
+    {
+    public static final int DEFAULT_BLOCKS = 5000;
+    /** How many times BLOCKS we run to warm up */
+    public static final int WARMUP = 2;
+    /** The fewest blocks we run to warm up, however few BLOCKS there are.  Fewer than this and the JIT is
+        often still compiling, and allocating, while we measure. */
+    public static final int MIN_WARMUP_BLOCKS = 20000;
+    /** How many times we measure a patch which allocates before we believe it */
+    public static final int MEASUREMENTS = 3;
+    /** Blocks for which we update each module by hand to see which ones allocate */
+    public static final int ATTRIBUTION_BLOCKS = 200;
+    /** The chord pattern repeats every PATTERN_BLOCKS blocks, and is released halfway through */
+    public static final int PATTERN_BLOCKS = 64;
+    /** Chords in the pattern, as MIDI notes */
+    static final int[][] CHORDS = { { 48, 52, 55 }, { 53, 57, 60, 64 }, { 43, 55, 59, 62 }, { 60 } };
+
+    static com.sun.management.ThreadMXBean bean;
+
+    /** The bytes allocated by each part of the engine for one patch */
+    static class Result
+        {
+        String patch;
+        long notes;
+        long go;
+        long render;
+        long workers;
+        /** Bytes allocated during the attribution blocks, by module, in the Sound's order, then by Input.go() and Output.lock() */
+        LinkedHashMap<String, Long> modules = new LinkedHashMap<String, Long>();
+        /** Bytes allocated by Output.go() during the attribution blocks */
+        long attributionGo;
+
+        boolean allocates() { return go > 0 || render > 0 || workers > 0; }
+        }
+
+    // NOTE ON and NOTE OFF messages for the pattern, built ahead of time so the harness itself doesn't allocate
+    static ShortMessage[][] noteOns;
+    static ShortMessage[][] noteOffs;
+
+    static void buildMessages() throws InvalidMidiDataException
+        {
+        noteOns = new ShortMessage[CHORDS.length][];
+        noteOffs = new ShortMessage[CHORDS.length][];
+        for(int i = 0; i < CHORDS.length; i++)
+            {
+            noteOns[i] = new ShortMessage[CHORDS[i].length];
+            noteOffs[i] = new ShortMessage[CHORDS[i].length];
+            for(int j = 0; j < CHORDS[i].length; j++)
+                {
+                noteOns[i][j] = new ShortMessage(ShortMessage.NOTE_ON, 0, CHORDS[i][j], Render.DEFAULT_VELOCITY);
+                noteOffs[i][j] = new ShortMessage(ShortMessage.NOTE_OFF, 0, CHORDS[i][j], 64);
+                }
+            }
+        }
+
+    // Plays the pattern's notes, if any, for the given block
+    static void dispatch(Input input, long block)
+        {
+        int chord = (int)((block / PATTERN_BLOCKS) % CHORDS.length);
+        int position = (int)(block % PATTERN_BLOCKS);
+        if (position == 0)
+            {
+            for(int j = 0; j < noteOns[chord].length; j++)
+                input.processNoteOn(noteOns[chord][j], false);
+            }
+        else if (position == PATTERN_BLOCKS / 2)
+            {
+            for(int j = 0; j < noteOffs[chord].length; j++)
+                input.processNoteOff(noteOffs[chord][j], false, false);
+            }
+        }
+
+    // Returns the ids of the live threads which the Output uses to help with its voice and output passes
+    static long[] getWorkerThreads(Set<Long> exclude)
+        {
+        ArrayList<Long> ids = new ArrayList<Long>();
+        ThreadInfo[] infos = bean.getThreadInfo(bean.getAllThreadIds());
+        for(int i = 0; i < infos.length; i++)
+            {
+            if (infos[i] == null || exclude.contains(infos[i].getThreadId())) continue;
+            String name = infos[i].getThreadName();
+            if (name.startsWith("Voice ") || name.startsWith("Output "))
+                ids.add(infos[i].getThreadId());
+            }
+        long[] result = new long[ids.size()];
+        for(int i = 0; i < result.length; i++)
+            result[i] = ids.get(i);
+        return result;
+        }
+
+    static long sum(long[] vals)
+        {
+        long total = 0;
+        for(int i = 0; i < vals.length; i++)
+            if (vals[i] > 0) total += vals[i];          // -1 means the thread has died
+        return total;
+        }
+
+    /** Loads the patch, warms it up, and measures what it allocates over BLOCKS blocks. */
+    static Result check(File patch, int blocks) throws Exception
+        {
+        Result result = new Result();
+        result.patch = patch.getName();
+
+        // Threads left over from previous patches aren't ours
+        HashSet<Long> exclude = new HashSet<Long>();
+        long[] all = bean.getAllThreadIds();
+        for(int i = 0; i < all.length; i++)
+            exclude.add(all[i]);
+
+        Output output = Render.load(patch);
+        Input input = output.getInput();
+
+        long block = 0;
+        long warmup = Math.max((long)blocks * WARMUP, MIN_WARMUP_BLOCKS);
+        for( ; block < warmup; block++)
+            {
+            dispatch(input, block);
+            output.go();
+            output.renderBlock();
+            }
+
+        // The worker threads are started lazily, so look for them after warming up
+        long[] workers = getWorkerThreads(exclude);
+
+        // If we see allocation it may just be the JIT, so measure again and report that
+        for(int i = 0; i < MEASUREMENTS; i++)
+            {
+            measure(output, input, block, blocks, workers, result);
+            block += blocks;
+            if (!result.allocates()) break;
+            }
+
+        if (result.go > 0)
+            attribute(output, input, block, result);
+        return result;
+        }
+
+    /** Runs BLOCKS blocks starting at block START, and records what they allocate in RESULT. */
+    static void measure(Output output, Input input, long start, int blocks, long[] workers, Result result)
+        {
+        long[] workersBefore = bean.getThreadAllocatedBytes(workers);
+
+        long notes = 0;
+        long go = 0;
+        long render = 0;
+        for(long block = start; block < start + blocks; block++)
+            {
+            long t0 = bean.getCurrentThreadAllocatedBytes();
+            dispatch(input, block);
+            long t1 = bean.getCurrentThreadAllocatedBytes();
+            output.go();
+            long t2 = bean.getCurrentThreadAllocatedBytes();
+            output.renderBlock();
+            long t3 = bean.getCurrentThreadAllocatedBytes();
+            notes += t1 - t0;
+            go += t2 - t1;
+            render += t3 - t2;
+            }
+
+        long[] workersAfter = bean.getThreadAllocatedBytes(workers);
+        result.notes = notes;
+        result.go = go;
+        result.render = render;
+        result.workers = sum(workersAfter) - sum(workersBefore);
+        }
+
+    /** Runs ATTRIBUTION_BLOCKS more blocks, and after each one updates every awake Sound's
+        modules again, one by one, recording what each allocates.  Modules which do real work every block
+        are updated twice per block this way, which is fine for finding allocations but not for listening.
+        Likewise we call Input.go() and Output.lock() a second time.  There are no MIDI devices, so Input.go()
+        has no messages to process the second time, but it still runs the MIDI clock. */
+    static void attribute(Output output, Input input, long block, Result result)
+        {
+        Sound first = output.getSound(0);
+        int len = first.getNumRegistered();
+        long[] bytes = new long[len];
+        long inputBytes = 0;
+        long lockBytes = 0;
+
+        for(long end = block + ATTRIBUTION_BLOCKS; block < end; block++)
+            {
+            dispatch(input, block);
+            long before = bean.getCurrentThreadAllocatedBytes();
+            output.go();
+            long afterGo = bean.getCurrentThreadAllocatedBytes();
+            input.go();
+            long afterInput = bean.getCurrentThreadAllocatedBytes();
+            output.lock();
+            long afterLock = bean.getCurrentThreadAllocatedBytes();
+            result.attributionGo += afterGo - before;
+            inputBytes += afterInput - afterGo;
+            lockBytes += afterLock - afterInput;
+            try
+                {
+                for(int s = 0; s < output.getNumSounds(); s++)
+                    {
+                    if (output.asleep[s]) continue;
+                    Sound sound = output.getSound(s);
+                    if (sound.planDirty) continue;
+                    Modulation[] plan = sound.plan;
+                    for(int i = 0; i < plan.length; i++)
+                        {
+                        long t0 = bean.getCurrentThreadAllocatedBytes();
+                        sound.update(plan[i], i);
+                        long t1 = bean.getCurrentThreadAllocatedBytes();
+                        int index = sound.planIndexes[i];
+                        if (index < len) bytes[index] += t1 - t0;
+                        }
+                    }
+                }
+            finally
+                {
+                output.unlock();
+                }
+            output.renderBlock();
+            }
+
+        for(int i = 0; i < len; i++)
+            {
+            if (bytes[i] == 0) continue;
+            String name = "#" + i + " " + first.getRegistered(i).getNameForModulation();
+            result.modules.put(name, bytes[i]);
+            }
+        if (inputBytes > 0) result.modules.put("Input.go()", inputBytes);
+        if (lockBytes > 0) result.modules.put("Output.lock()", lockBytes);
+        }
+
+    static String format(long bytes)
+        {
+        return String.format("%12d", bytes);
+        }
+
+    /** Checks a single patch and prints the result.  Returns true if it doesn't allocate. */
+    static boolean checkAndReport(File patch, int blocks)
+        {
+        Result result;
+        try
+            {
+            result = check(patch, blocks);
+            }
+        catch (Exception ex)
+            {
+            System.out.println(String.format("%-32s FAILED TO LOAD: %s", patch.getName(), ex));
+            return false;
+            }
+        System.out.println(String.format("%-32s", result.patch) + " " + format(result.go) + " " + format(result.render) +
+            " " + format(result.workers) + " " + format(result.notes) + (result.allocates() ? "  ALLOCATES" : ""));
+        for(String module : result.modules.keySet())
+            System.out.println("    " + String.format("%-28s", module) + " " + format(result.modules.get(module)));
+        if (result.go > 0 && result.modules.isEmpty())
+            {
+            // Nothing allocated again while we were looking for it, so it was most likely the JIT, or 
+            // something in Output.go() itself, such as copying the partials or waiting for the ring
+            System.out.println("    " + String.format("%-28s", "unattributed") + " " + format(result.go) + 
+                (result.attributionGo == 0 ? "  (not seen again)" : ""));
+            }
+        return !result.allocates();
+        }
+
+    /** Checks the patch in a JVM of its own, with the same JVM arguments and classpath as ours.  We do this
+        when checking more than one patch, because an Output's threads never exit, so a patch and its Output are 
+        never garbage collected, and a few dozen of them will run us out of memory.  Returns true if it doesn't allocate. */
+    static boolean fork(File patch, int blocks) throws Exception
+        {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + CHILD_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AllocationCheck.class.getName());
+        command.add(String.valueOf(blocks));
+        command.add(patch.getPath());
+        return new ProcessBuilder(command).inheritIO().start().waitFor() == 0;
+        }
+
+    // Set in the JVMs we fork, so they only print their patch's results
+    static final String CHILD_PROPERTY = "flow.AllocationCheck.child";
+
+    public static void main(String[] args)
+        {
+        System.setProperty("java.awt.headless", "true");
+        try
+            {
+            int blocks = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BLOCKS);
+            ArrayList<File> patches = new ArrayList<File>();
+            for(int i = 1; i < args.length; i++)
+                patches.add(new File(args[i]));
+            if (patches.size() == 0)
+                {
+                File[] files = new File("flow/patches").listFiles();
+                if (files == null)
+                    {
+                    System.err.println("AllocationCheck.main() ERROR: no patches given, and couldn't find flow/patches");
+                    System.exit(1);
+                    }
+                Arrays.sort(files);
+                for(int i = 0; i < files.length; i++)
+                    if (files[i].getName().endsWith(".flow"))
+                        patches.add(files[i]);
+                }
+
+            bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            if (!bean.isThreadAllocatedMemorySupported())
+                {
+                System.err.println("AllocationCheck.main() ERROR: this JVM can't measure allocation per thread");
+                System.exit(1);
+                }
+            bean.setThreadAllocatedMemoryEnabled(true);
+            buildMessages();
+
+            if (Boolean.getBoolean(CHILD_PROPERTY))
+                {
+                System.exit(checkAndReport(patches.get(0), blocks) ? 0 : 1);
+                }
+
+            System.out.println("Bytes allocated over " + blocks + " blocks, after " + Math.max((long)blocks * WARMUP, MIN_WARMUP_BLOCKS) + " blocks of warmup");
+            System.out.println(String.format("%-32s %12s %12s %12s %12s", "Patch", "Go", "Render", "Workers", "Notes"));
+            int failures = 0;
+            for(File patch : patches)
+                {
+                boolean ok = (patches.size() == 1 ? checkAndReport(patch, blocks) : fork(patch, blocks));
+                if (!ok) failures++;
+                }
+
+            System.out.println(failures == 0 ? "All " + patches.size() + " patches are allocation-free" :
+                failures + " of " + patches.size() + " patches allocate");
+            System.exit(failures == 0 ? 0 : 1);
+            }
+        catch (Exception ex)
+            {
+            ex.printStackTrace();
+            System.exit(1);
+            }
+        }
+    }
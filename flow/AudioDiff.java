@@ -0,0 +1,90 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.io.*;
+
+/**
+   AudioDiff renders a patch offline twice, once with the standard engine and once with another engine,
+   and reports how much they differ.  This tells you what an engine which isn't identical to the standard
+   one, such as ENGINE_VECTOR or ENGINE_SPECTRAL, costs in quality for a given patch.  It can also compare
+   the standard engine fed single precision partials (see Prefs.getLastSinglePrecision()) against the 
+   standard engine fed double precision ones.  Render uses a fixed random seed, so any difference is due 
+   to the engine or the precision.
+
+   <p>Usage: <tt>java flow.AudioDiff patch.flow notes.txt engine|single [tail]</tt>
+
+   <p>ENGINE is the number of one of the Output.ENGINE_... constants, as in -DEngine=..., or <tt>single</tt>
+   for the standard engine with single precision partials.  The notes file and TAIL are as in Render.  Both renders are compared as the 16-bit PCM they produce.
+   We report the largest difference of any sample, in 16-bit steps, and the RMS of the difference relative
+   to the RMS of the reference, as a signal-to-noise ratio in dB.  A difference of 0 or 1 step is
+   below what the output can represent anyway.
+**/
+
+public class AudioDiff
+    {
+    /** Renders the patch with the given engine and precision and returns the 16-bit PCM. */
+    static byte[] render(File patch, File notes, int engine, boolean singlePrecision, double tail) throws Exception
+        {
+        Output.engine = engine;
+        Output.singlePrecision = singlePrecision;
+        Output output = Render.load(patch);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Render.render(output, Render.loadNotes(notes), new AudioSink.Stream(bytes, Output.isStereo() ? 2 : 1), tail);
+        System.err.println("Rendered with the " + output.getEngineName() + " engine, in " + (singlePrecision ? "single" : "double") + " precision");
+        return bytes.toByteArray();
+        }
+
+    public static void main(String[] args)
+        {
+        if (args.length < 3 || args.length > 4)
+            {
+            System.err.println("Usage: java flow.AudioDiff patch.flow notes.txt engine|single [tail]");
+            System.exit(1);
+            }
+
+        System.setProperty("java.awt.headless", "true");
+        try
+            {
+            boolean single = args[2].equals("single");
+            int engine = (single ? Output.ENGINE_SCALAR : Integer.parseInt(args[2]));
+            double tail = (args.length == 4 ? Double.parseDouble(args[3]) : Render.DEFAULT_TAIL);
+            File patch = new File(args[0]);
+            File notes = new File(args[1]);
+            byte[] reference = render(patch, notes, Output.ENGINE_SCALAR, false, tail);
+            byte[] test = render(patch, notes, engine, single, tail);
+
+            int length = Math.min(reference.length, test.length) / 2;
+            int maxDiff = 0;
+            long differing = 0;
+            double signal = 0;
+            double noise = 0;
+            for(int i = 0; i < length; i++)
+                {
+                int r = (short)((reference[i * 2] & 255) | (reference[i * 2 + 1] << 8));
+                int t = (short)((test[i * 2] & 255) | (test[i * 2 + 1] << 8));
+                int d = Math.abs(r - t);
+                if (d > maxDiff) maxDiff = d;
+                if (d != 0) differing++;
+                signal += r * (double)r;
+                noise += d * (double)d;
+                }
+
+            System.err.println("Samples compared: " + length);
+            System.err.println("Samples differing: " + differing + " (" + (length == 0 ? 0 : 100.0 * differing / length) + "%)");
+            System.err.println("Largest difference: " + maxDiff + " steps of 32768");
+            if (noise == 0)
+                System.err.println("SNR: infinite (identical)");
+            else
+                System.err.println("SNR: " + (10 * Math.log10(signal / noise)) + " dB");
+            }
+        catch (Exception ex)
+            {
+            ex.printStackTrace();
+            System.exit(1);
+            }
+        System.exit(0);
+        }
+    }
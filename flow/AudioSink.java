@@ -0,0 +1,199 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.io.*;
+import javax.sound.sampled.*;
+
+/**
+   An AudioSink is where the Output sends its finished audio.  Each block the Output mixes its
+   voices, adds reverb, and packs the result into 16-bit signed little-endian PCM at
+   Output.SAMPLING_RATE, interleaved left then right if the Output is in stereo.
+   It then hands this buffer to its AudioSink.
+
+   <p>The standard AudioSink is Line, which writes to the sound device.  Wav writes to a WAV file,
+   Stream writes raw PCM to an OutputStream such as stdout or a named pipe, and Null
+   throws the audio away but counts the frames, which is useful for measuring how fast
+   the engine can run.  You can set the Output's sink with Output.setAudioSink(...).
+**/
+
+public interface AudioSink
+    {
+    /** Writes LENGTH bytes of PCM audio from the given buffer, blocking if necessary. */
+    public void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /** Returns true if the sink has run (or nearly run) out of audio to play, that is,
+        if the Output isn't keeping up.  Sinks which aren't played in real time always return false. */
+    public boolean isStarved();
+
+    /** Returns true if write() blocks until the sink is ready for more audio, as a sound device does, so the
+        audio is paced in real time.  When the Output plays live to a sink which isn't, it paces itself. */
+    public boolean isRealTime();
+
+    /** Flushes and closes the sink.  It should not be written to afterwards. */
+    public void close() throws IOException;
+
+
+
+    /** Returns the number of bytes in a frame: 4 if stereo, else 2. */
+    public static int getFrameSize(int numChannels) { return numChannels * 2; }
+
+    /** Builds a sink from a name: "null" for a Null sink, "-" for a Stream on stdout, a filename ending
+        in ".wav" for a Wav file, and anything else is treated as a file or named pipe and gets a Stream. */
+    public static AudioSink forName(String name, int numChannels) throws IOException
+        {
+        if (name.equals("null"))
+            return new Null(numChannels);
+        else if (name.equals("-"))
+            return new Stream(System.out, numChannels);
+        else if (name.toLowerCase().endsWith(".wav"))
+            return new Wav(new File(name), numChannels);
+        else
+            return new Stream(new FileOutputStream(name), numChannels);
+        }
+
+
+
+    /** Writes to a SourceDataLine, normally the sound device. */
+    public static class Line implements AudioSink
+        {
+        SourceDataLine sdl;
+        int starvation;
+
+        /** Wraps an open, started SourceDataLine.  The sink is starved when the line has more than
+            STARVATION bytes free in its buffer, that is, when it's about to run dry. */
+        public Line(SourceDataLine sdl, int starvation)
+            {
+            this.sdl = sdl;
+            this.starvation = starvation;
+            }
+
+        public SourceDataLine getLine() { return sdl; }
+        public void write(byte[] buffer, int offset, int length) { sdl.write(buffer, offset, length); }
+        public boolean isStarved() { return sdl.available() >= starvation; }
+        public boolean isRealTime() { return true; }
+        public void close() { sdl.stop(); sdl.close(); }
+        }
+
+
+
+    /** Throws away its audio, but counts the frames written. */
+    public static class Null implements AudioSink
+        {
+        volatile long numFrames;
+        int frameSize;
+
+        public Null(int numChannels) { frameSize = getFrameSize(numChannels); }
+
+        /** Returns the number of frames written so far. */
+        public long getNumFrames() { return numFrames; }
+        public void write(byte[] buffer, int offset, int length) { numFrames += length / frameSize; }
+        public boolean isStarved() { return false; }
+        public boolean isRealTime() { return false; }
+        public void close() { }
+        }
+
+
+
+    /** Writes raw PCM to an OutputStream, such as System.out or a named pipe. */
+    public static class Stream implements AudioSink
+        {
+        OutputStream stream;
+        long numFrames;
+        int frameSize;
+
+        public Stream(OutputStream stream, int numChannels)
+            {
+            this.stream = new BufferedOutputStream(stream);
+            frameSize = getFrameSize(numChannels);
+            }
+
+        /** Returns the number of frames written so far. */
+        public long getNumFrames() { return numFrames; }
+
+        public void write(byte[] buffer, int offset, int length) throws IOException
+            {
+            stream.write(buffer, offset, length);
+            numFrames += length / frameSize;
+            }
+
+        public boolean isStarved() { return false; }
+        public boolean isRealTime() { return false; }
+        public void close() throws IOException { stream.close(); }
+        }
+
+
+
+    /** Writes a 16-bit PCM WAV file.  The file is streamed, so its length needn't be known in advance:
+        the header is written with zero lengths, then filled in when the sink is closed. */
+    public static class Wav implements AudioSink
+        {
+        static final int HEADER_SIZE = 44;
+
+        RandomAccessFile file;
+        OutputStream stream;
+        long numBytes;
+        int numChannels;
+
+        public Wav(File f, int numChannels) throws IOException
+            {
+            this.numChannels = numChannels;
+            file = new RandomAccessFile(f, "rw");
+            file.setLength(0);
+            stream = new BufferedOutputStream(new FileOutputStream(file.getFD()));
+            writeHeader();
+            }
+
+        /** Returns the number of frames written so far. */
+        public long getNumFrames() { return numBytes / getFrameSize(numChannels); }
+
+        public void write(byte[] buffer, int offset, int length) throws IOException
+            {
+            stream.write(buffer, offset, length);
+            numBytes += length;
+            }
+
+        public boolean isStarved() { return false; }
+        public boolean isRealTime() { return false; }
+
+        public void close() throws IOException
+            {
+            stream.flush();
+            if ((numBytes & 1) == 1) stream.write(0);           // chunks are padded to an even size
+            stream.flush();
+            file.seek(0);
+            writeHeader();
+            file.close();
+            }
+
+        void writeHeader() throws IOException
+            {
+            int sampleRate = (int)Output.SAMPLING_RATE;
+            int frameSize = getFrameSize(numChannels);
+            long dataSize = Math.min(numBytes, 0xFFFFFFFFL - HEADER_SIZE);
+
+            byte[] header = new byte[HEADER_SIZE];
+            putString(header, 0, "RIFF");
+            putInt(header, 4, (int)(dataSize + (dataSize & 1) + HEADER_SIZE - 8));
+            putString(header, 8, "WAVE");
+            putString(header, 12, "fmt ");
+            putInt(header, 16, 16);                         // fmt chunk size
+            putShort(header, 20, 1);                        // PCM
+            putShort(header, 22, numChannels);
+            putInt(header, 24, sampleRate);
+            putInt(header, 28, sampleRate * frameSize);     // bytes per second
+            putShort(header, 32, frameSize);                // block align
+            putShort(header, 34, 16);                       // bits per sample
+            putString(header, 36, "data");
+            putInt(header, 40, (int)dataSize);
+
+            file.write(header);             // the file and the stream share the same file position
+            }
+
+        static void putString(byte[] b, int pos, String s) { for(int i = 0; i < s.length(); i++) b[pos + i] = (byte)s.charAt(i); }
+        static void putShort(byte[] b, int pos, int val) { b[pos] = (byte)(val & 255); b[pos + 1] = (byte)((val >> 8) & 255); }
+        static void putInt(byte[] b, int pos, int val) { putShort(b, pos, val & 0xFFFF); putShort(b, pos + 2, (val >>> 16) & 0xFFFF); }
+        }
+    }
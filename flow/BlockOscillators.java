@@ -0,0 +1,227 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A block version of Output.buildSample().  buildSample() computes one sample by walking all
+   the partials, so the per-output threads read and write every partial's position and amplitude
+   once per sample.  BlockOscillators turns this inside out: for each partial it computes the whole
+   block of samples, keeping the partial's position and amplitude in locals, and accumulates
+   into the voice's sample buffer.
+
+   <p>Each partial's amplitude and position are a chain of dependent operations from sample to
+   sample, so one partial at a time would stall on latency.  Instead we run four partials side by side.
+
+   <p>Each sample still receives its partials' contributions in the same order, and each partial
+   is updated with the same arithmetic, so the output is identical to the standard engine
+   (assuming, as is always the case, that the orders are a permutation).  With SIN_QUALITY_RECURSIVE
+   we just use the standard engine.
+**/
+
+class BlockOscillators implements Output.Oscillators
+    {
+    Output output;
+
+    public BlockOscillators(Output output)
+        {
+        this.output = output;
+        }
+
+    public String getName() { return "Block"; }
+
+    static double sin(int sinQuality, double x)
+        {
+        switch(sinQuality)
+            {
+            case Output.SIN_QUALITY_LOW:
+                return Utility.fastSin(x);
+            case Output.SIN_QUALITY_MEDIUM:
+                return Utility.fastIntSin(x);
+            default:
+                return Math.sin(x);
+            }
+        }
+
+    public void buildSamples(int s, double[] samples)
+        {
+        // Phasors are already cheap per sample, and we must match the standard engine exactly
+        if (output.getSinQuality() == Output.SIN_QUALITY_RECURSIVE)
+            {
+            output.buildScalarSamples(s, samples);
+            return;
+            }
+            
+        Output.Swap _with = output.with;
+        double v = _with.velocities[s];
+        int len = samples.length;
+
+        for (int samp = 0; samp < len; samp++)
+            samples[samp] = 0;
+
+        if (_with.dephase[s])
+            buildDephased(s, samples);
+        else
+            buildPhased(s, samples);
+
+        for (int samp = 0; samp < len; samp++)
+            samples[samp] = samples[samp] * v * Output.DEFAULT_VOLUME_MULTIPLIER;
+        }
+
+    // Dephased partials stop at Nyquist, and don't advance at all if they're silent
+    void buildDephased(int s, double[] samples)
+        {
+        Output.Swap _with = output.with;
+        PartialFrame frame = output.partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pos = output.positions[s];
+        double[] currentAmp = output.currentAmplitudes[s];
+        double[] mixing = Output.MIXING;
+        double tr = _with.pitches[s] * Output.INV_SAMPLING_RATE;
+        double nyquistDividedByPitch = Output.NYQUIST / _with.pitches[s];
+        int sinQuality = output.getSinQuality();
+        int len = samples.length;
+        final double ALPHA = Output.PARTIALS_INTERPOLATION_ALPHA;
+        final double OM = Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+        final double MIN = Output.MINIMUM_VOLUME;
+        final double SUB = Output.WELL_ABOVE_SUBNORMALS;
+        final double PI2 = Output.PI2;
+
+        int n = frame.count;
+        for (int i = 0; i < n; i++)
+            {
+            if (freq[i] > nyquistDividedByPitch)
+                { n = i; break; }
+            }
+
+        int i = 0;
+        for( ; i + 4 <= n; i += 4)
+            {
+            int o0 = orders[i] & 0xFF, o1 = orders[i + 1] & 0xFF, o2 = orders[i + 2] & 0xFF, o3 = orders[i + 3] & 0xFF;
+            double t0 = amp[i] * ALPHA, t1 = amp[i + 1] * ALPHA, t2 = amp[i + 2] * ALPHA, t3 = amp[i + 3] * ALPHA;
+            double d0 = freq[i] * tr, d1 = freq[i + 1] * tr, d2 = freq[i + 2] * tr, d3 = freq[i + 3] * tr;
+            double m0 = mixing[o0], m1 = mixing[o1], m2 = mixing[o2], m3 = mixing[o3];
+            double a0 = currentAmp[o0], a1 = currentAmp[o1], a2 = currentAmp[o2], a3 = currentAmp[o3];
+            double p0 = pos[o0], p1 = pos[o1], p2 = pos[o2], p3 = pos[o3];
+
+            for (int samp = 0; samp < len; samp++)
+                {
+                double sample = samples[samp];
+                a0 = (a0 * OM) + t0; if (a0 < SUB) a0 = 0;
+                a1 = (a1 * OM) + t1; if (a1 < SUB) a1 = 0;
+                a2 = (a2 * OM) + t2; if (a2 < SUB) a2 = 0;
+                a3 = (a3 * OM) + t3; if (a3 < SUB) a3 = 0;
+                if (a0 > MIN) { p0 = p0 + d0; p0 = p0 - (int) p0; sample += sin(sinQuality, p0 * PI2 + m0) * a0; }
+                if (a1 > MIN) { p1 = p1 + d1; p1 = p1 - (int) p1; sample += sin(sinQuality, p1 * PI2 + m1) * a1; }
+                if (a2 > MIN) { p2 = p2 + d2; p2 = p2 - (int) p2; sample += sin(sinQuality, p2 * PI2 + m2) * a2; }
+                if (a3 > MIN) { p3 = p3 + d3; p3 = p3 - (int) p3; sample += sin(sinQuality, p3 * PI2 + m3) * a3; }
+                samples[samp] = sample;
+                }
+
+            currentAmp[o0] = a0; currentAmp[o1] = a1; currentAmp[o2] = a2; currentAmp[o3] = a3;
+            pos[o0] = p0; pos[o1] = p1; pos[o2] = p2; pos[o3] = p3;
+            }
+
+        for( ; i < n; i++)
+            {
+            int o0 = orders[i] & 0xFF;
+            double t0 = amp[i] * ALPHA;
+            double d0 = freq[i] * tr;
+            double m0 = mixing[o0];
+            double a0 = currentAmp[o0];
+            double p0 = pos[o0];
+
+            for (int samp = 0; samp < len; samp++)
+                {
+                a0 = (a0 * OM) + t0; if (a0 < SUB) a0 = 0;
+                if (a0 > MIN) { p0 = p0 + d0; p0 = p0 - (int) p0; samples[samp] += sin(sinQuality, p0 * PI2 + m0) * a0; }
+                }
+
+            currentAmp[o0] = a0;
+            pos[o0] = p0;
+            }
+        }
+
+    // Non-dephased partials all advance, but only the live ones, which come first, are summed.  The idle ones 
+    // are advanced all at once by Output.advanceIdlePartials(), just as buildScalarSamples() does.
+    void buildPhased(int s, double[] samples)
+        {
+        output.advanceIdlePartials(s, samples.length);
+        
+        Output.Swap _with = output.with;
+        PartialFrame frame = output.partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pos = output.positions[s];
+        double[] currentAmp = output.currentAmplitudes[s];
+        double tr = _with.pitches[s] * Output.INV_SAMPLING_RATE;
+        double nyquistDividedByPitch = Output.NYQUIST / _with.pitches[s];
+        int sinQuality = output.getSinQuality();
+        int len = samples.length;
+        final double ALPHA = Output.PARTIALS_INTERPOLATION_ALPHA;
+        final double OM = Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+        final double MIN = Output.MINIMUM_VOLUME;
+        final double SUB = Output.WELL_ABOVE_SUBNORMALS;
+        final double PI2 = Output.PI2;
+        int n = frame.count;
+
+        int i = 0;
+        for( ; i + 4 <= n; i += 4)
+            {
+            int i0 = i, i1 = i + 1, i2 = i + 2, i3 = i + 3;
+            int o0 = orders[i0] & 0xFF, o1 = orders[i1] & 0xFF, o2 = orders[i2] & 0xFF, o3 = orders[i3] & 0xFF;
+            double t0 = amp[i0] * ALPHA, t1 = amp[i1] * ALPHA, t2 = amp[i2] * ALPHA, t3 = amp[i3] * ALPHA;
+            double d0 = freq[i0] * tr, d1 = freq[i1] * tr, d2 = freq[i2] * tr, d3 = freq[i3] * tr;
+            boolean b0 = freq[i0] <= nyquistDividedByPitch, b1 = freq[i1] <= nyquistDividedByPitch,
+                b2 = freq[i2] <= nyquistDividedByPitch, b3 = freq[i3] <= nyquistDividedByPitch;
+            double a0 = currentAmp[o0], a1 = currentAmp[o1], a2 = currentAmp[o2], a3 = currentAmp[o3];
+            double p0 = pos[o0], p1 = pos[o1], p2 = pos[o2], p3 = pos[o3];
+
+            for (int samp = 0; samp < len; samp++)
+                {
+                double sample = samples[samp];
+                a0 = (a0 * OM) + t0; if (a0 < SUB) a0 = 0;
+                a1 = (a1 * OM) + t1; if (a1 < SUB) a1 = 0;
+                a2 = (a2 * OM) + t2; if (a2 < SUB) a2 = 0;
+                a3 = (a3 * OM) + t3; if (a3 < SUB) a3 = 0;
+                p0 = p0 + d0; p0 = p0 - (int) p0;
+                p1 = p1 + d1; p1 = p1 - (int) p1;
+                p2 = p2 + d2; p2 = p2 - (int) p2;
+                p3 = p3 + d3; p3 = p3 - (int) p3;
+                if (b0 && a0 > MIN) sample += sin(sinQuality, p0 * PI2) * a0;
+                if (b1 && a1 > MIN) sample += sin(sinQuality, p1 * PI2) * a1;
+                if (b2 && a2 > MIN) sample += sin(sinQuality, p2 * PI2) * a2;
+                if (b3 && a3 > MIN) sample += sin(sinQuality, p3 * PI2) * a3;
+                samples[samp] = sample;
+                }
+
+            currentAmp[o0] = a0; currentAmp[o1] = a1; currentAmp[o2] = a2; currentAmp[o3] = a3;
+            pos[o0] = p0; pos[o1] = p1; pos[o2] = p2; pos[o3] = p3;
+            }
+
+        for( ; i < n; i++)
+            {
+            int i0 = i;
+            int o0 = orders[i0] & 0xFF;
+            double t0 = amp[i0] * ALPHA;
+            double d0 = freq[i0] * tr;
+            boolean b0 = freq[i0] <= nyquistDividedByPitch;
+            double a0 = currentAmp[o0];
+            double p0 = pos[o0];
+
+            for (int samp = 0; samp < len; samp++)
+                {
+                a0 = (a0 * OM) + t0; if (a0 < SUB) a0 = 0;
+                p0 = p0 + d0; p0 = p0 - (int) p0;
+                if (b0 && a0 > MIN) samples[samp] += sin(sinQuality, p0 * PI2) * a0;
+                }
+
+            currentAmp[o0] = a0;
+            pos[o0] = p0;
+            }
+        }
+    }
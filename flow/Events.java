@@ -0,0 +1,111 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import jdk.jfr.*;
+
+/**
+   Java Flight Recorder events for the audio engine.  They're all disabled by default, and when disabled
+   the audio threads don't create them, so they cost nothing.  To record them, make a copy of one of the JDK's
+   .jfc settings files (or use JDK Mission Control's template manager) and add, for example:
+
+   <tt><pre>
+   &lt;event name="flow.VoicePass"&gt;
+   &lt;setting name="enabled"&gt;true&lt;/setting&gt;
+   &lt;setting name="threshold"&gt;0 ms&lt;/setting&gt;
+   &lt;/event&gt;
+   </pre></tt>
+
+   <p>...then run Flow with <tt>-XX:StartFlightRecording:settings=yourfile.jfc,filename=flow.jfr</tt>.
+   Each event records its thread and duration.  A late block shows up as an OutputBlock with
+   <b>starved</b> set, and the VoicePass, BuildBlock, MidiBatch, and LockWait events around it show why.
+**/
+
+public class Events
+    {
+    // Disabled events are only compiled away once the JIT has optimized their callers: until then, or after a
+    // deoptimization, creating one allocates.  So on the audio threads we check the event's type before creating it.
+    static final EventType VOICE_PASS = EventType.getEventType(VoicePass.class);
+    static final EventType OUTPUT_BLOCK = EventType.getEventType(OutputBlock.class);
+    static final EventType BUILD_BLOCK = EventType.getEventType(BuildBlock.class);
+    static final EventType MIDI_BATCH = EventType.getEventType(MidiBatch.class);
+    static final EventType LOCK_WAIT = EventType.getEventType(LockWait.class);
+
+    @Name("flow.VoicePass")
+    @Label("Voice Pass")
+    @Category({"Flow", "Audio"})
+    @Description("Output.go(): the primary voice thread updates every Sound and fills the next Swap")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class VoicePass extends Event
+        {
+        @Label("Voices")
+        public int voices;
+        }
+
+    @Name("flow.OutputBlock")
+    @Label("Output Block")
+    @Category({"Flow", "Audio"})
+    @Description("Output.renderBlock(): the Sound Output thread turns the partials into a block of audio")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class OutputBlock extends Event
+        {
+        @Label("Starved")
+        @Description("The audio device had run out of audio before this block")
+        public boolean starved;
+        }
+
+    @Name("flow.BuildBlock")
+    @Label("Build Block")
+    @Category({"Flow", "Audio"})
+    @Description("One output thread builds one voice's block of samples")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class BuildBlock extends Event
+        {
+        @Label("Voice")
+        public int voice;
+
+        @Label("Asleep")
+        public boolean asleep;
+        }
+
+    @Name("flow.MidiBatch")
+    @Label("MIDI Batch")
+    @Category({"Flow", "MIDI"})
+    @Description("Input.go(): the MIDI messages which arrived since the last block are dispatched")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class MidiBatch extends Event
+        {
+        @Label("Messages")
+        public int messages;
+        }
+
+    @Name("flow.PatchLoad")
+    @Label("Patch Load")
+    @Category({"Flow"})
+    @Description("A patch is loaded into the Rack")
+    @Enabled(false)
+    public static class PatchLoad extends Event
+        {
+        @Label("Patch")
+        public String patch;
+
+        @Label("Modules")
+        public int modules;
+        }
+
+    @Name("flow.LockWait")
+    @Label("Lock Wait")
+    @Category({"Flow"})
+    @Description("A thread waits to acquire Output.lock() because another thread holds it")
+    @Enabled(false)
+    @Threshold("100 us")
+    public static class LockWait extends Event
+        {
+        }
+    }
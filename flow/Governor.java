@@ -0,0 +1,225 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.*;
+
+/**
+   Watches how long the Sound Output thread takes to render each block, how long the primary voice
+   thread takes to update the Sounds for it, and whether the audio device is starving, and if we're running out of time, trades sound quality for speed rather than
+   letting the audio glitch.  When there's headroom again, it steps back up.
+
+   <p>The policy is a list of stages, applied in order as the load rises, and undone in reverse
+   order as it falls:
+
+   <ul>
+   <li>SINE: drop the sine quality to Output.SIN_QUALITY_LOW (if it's MEDIUM or HIGH).  This only
+   changes the sine quality of our Output, not the one in the Prefs.
+   <li>PARTIALS: only synthesize the lower half of each voice's partials.  This stage may be
+   entered up to PARTIAL_STEPS times, halving the partials each time.
+   <li>VOICES: each time we're still overloaded, silence the released voice which was released longest ago.
+   </ul>
+
+   <p>A stage which can't lower the cost, such as SINE when the sine quality is already LOW, or PARTIALS
+   when there are already only MINIMUM_PARTIALS, is passed over, so we don't waste a step, and the time it
+   takes to settle, on it.
+
+   <p>The load is the time spent rendering a block, or updating the Sounds for it, whichever is longer, 
+   divided by the block's duration, smoothed over many blocks.  The two run in different threads at the 
+   same time, so whichever is slower is what holds up the audio.  We step down if the load rises above a high threshold, or the audio device starves,
+   and step up only once the load has stayed below a low threshold for a while.  The policy and
+   thresholds come from the Prefs: see Prefs.getLastGovernorPolicy() and friends.  The default policy
+   is empty, so by default there is no governor.
+
+   <p>The governor is only used when the Output is running in real time.
+**/
+
+class Governor
+    {
+    /** Degrade the sine quality */
+    public static final String STAGE_SINE = "sine";
+    /** Degrade the number of partials */
+    public static final String STAGE_PARTIALS = "partials";
+    /** Steal released voices */
+    public static final String STAGE_VOICES = "voices";
+
+    /** How many times the PARTIALS stage can halve the partials */
+    public static final int PARTIAL_STEPS = 2;
+    /** Never cap the partials below this */
+    public static final int MINIMUM_PARTIALS = 16;
+
+    // Smoothing factor for the load
+    static final double LOAD_ALPHA = 0.02;
+    // How long to wait after stepping down before stepping down again, in seconds.  This gives the
+    // change time to show up in the load.
+    static final double SETTLE_TIME = 0.25;
+    // How long the load must stay below the low threshold before we step up, in seconds
+    static final double RECOVERY_TIME = 2.0;
+    // How long to just watch at startup, while the JIT compiler is still warming up, in seconds
+    static final double WARMUP_TIME = 2.0;
+
+    Output output;
+    String[] stages;            // one entry per step, in order
+    double high;
+    double low;
+    double blockNanos;          // the duration of one block
+    int settleBlocks;
+    int recoveryBlocks;
+    long warmupEnd = -1;        // when WARMUP_TIME is over, in System.nanoTime(), or -1 if we've not started yet, or 0 if it's over
+
+    int level = 0;              // how many entries of stages are in effect
+    boolean[] applied;          // for each entry of stages in effect, whether it actually changed anything
+    double load = 0;
+    int blocksSinceChange = 0;
+    int blocksUnderLow = 0;
+    int partialSteps = 0;       // how many PARTIALS stages are in effect
+
+    /** Builds a Governor with the given POLICY, a comma-separated list of the stages "sine", "partials",
+        and "voices", and HIGH and LOW load thresholds (as fractions of the available time). */
+    public Governor(Output output, String policy, double high, double low)
+        {
+        this.output = output;
+        this.high = high;
+        this.low = low;
+        blockNanos = Output.getSkip() * 1000000000.0 / Output.SAMPLING_RATE;
+        settleBlocks = (int)(SETTLE_TIME * Output.SAMPLING_RATE / Output.getSkip());
+        recoveryBlocks = (int)(RECOVERY_TIME * Output.SAMPLING_RATE / Output.getSkip());
+
+        ArrayList<String> list = new ArrayList<String>();
+        String[] tokens = policy.split(",");
+        for(int i = 0; i < tokens.length; i++)
+            {
+            String token = tokens[i].trim().toLowerCase();
+            if (token.length() == 0) continue;
+            if (token.equals(STAGE_SINE))
+                list.add(STAGE_SINE);
+            else if (token.equals(STAGE_VOICES))
+                list.add(STAGE_VOICES);
+            else if (token.equals(STAGE_PARTIALS))
+                for(int j = 0; j < PARTIAL_STEPS; j++)
+                    list.add(STAGE_PARTIALS);
+            else
+                System.err.println("Governor.Governor() WARNING: unknown stage " + token);
+            }
+        stages = list.toArray(new String[0]);
+        applied = new boolean[stages.length];
+        }
+
+    /** Returns how many steps down we presently are. */
+    public int getLevel() { return level; }
+
+    /** Returns the smoothed load, that is, the fraction of the available time spent rendering. */
+    public double getLoad() { return load; }
+
+    /** Returns a description of the current state, for display. */
+    public String getDescription()
+        {
+        String s = "Load " + (int)(load * 100) + "%";
+        String degraded = "";
+        for(int i = 0; i < level; i++)
+            if (applied[i]) degraded += " " + stages[i];
+        return (degraded.length() == 0 ? s : s + ", degraded:" + degraded);
+        }
+
+    /** Called by the Output thread after each block, with the time it took to render, and the time the 
+        primary voice thread last took to update the Sounds, in nanoseconds, and whether the audio device 
+        had starved before it. */
+    public void update(long renderNanos, long voiceNanos, boolean starved)
+        {
+        load = load * (1.0 - LOAD_ALPHA) + (Math.max(renderNanos, voiceNanos) / blockNanos) * LOAD_ALPHA;
+        if (warmupEnd != 0)
+            {
+            long now = System.nanoTime();
+            if (warmupEnd == -1) warmupEnd = now + (long)(WARMUP_TIME * 1000000000.0);
+            if (now - warmupEnd < 0) return;
+            warmupEnd = 0;
+            }
+        blocksSinceChange++;
+
+        if (load < low) blocksUnderLow++;
+        else blocksUnderLow = 0;
+
+        if ((starved || load > high) && blocksSinceChange >= settleBlocks)
+            {
+            boolean changed = false;
+            if (level < stages.length)
+                {
+                // Pass over stages which wouldn't help
+                while(level < stages.length && !changed)
+                    {
+                    changed = applied[level] = apply(stages[level]);
+                    level++;
+                    }
+                }
+            else if (stages.length > 0 && stages[stages.length - 1].equals(STAGE_VOICES))
+                {
+                changed = apply(STAGE_VOICES);            // keep stealing voices
+                }
+            if (changed)
+                {
+                blocksSinceChange = 0;
+                blocksUnderLow = 0;
+                }
+            }
+        else if (level > 0 && blocksUnderLow >= recoveryBlocks)
+            {
+            // Likewise, pass back over the stages which didn't change anything
+            while(level > 0)
+                {
+                level--;
+                if (applied[level]) { undo(stages[level]); break; }
+                }
+            blocksSinceChange = 0;
+            blocksUnderLow = 0;
+            }
+        }
+
+    // Returns the partial cap for the given number of PARTIALS steps
+    static int partialCap(int steps)
+        {
+        return Math.max(Math.min(MINIMUM_PARTIALS, Unit.NUM_PARTIALS), Unit.NUM_PARTIALS >> steps);
+        }
+
+    // Applies the stage, returning false if it couldn't lower the cost, and so did nothing
+    boolean apply(String stage)
+        {
+        if (stage.equals(STAGE_SINE))
+            {
+            int q = output.getSinQuality();
+            if (q != Output.SIN_QUALITY_MEDIUM && q != Output.SIN_QUALITY_HIGH)
+                return false;
+            output.sinQualityOverride = Output.SIN_QUALITY_LOW;
+            return true;
+            }
+        else if (stage.equals(STAGE_PARTIALS))
+            {
+            if (partialCap(partialSteps + 1) >= output.partialCap)
+                return false;
+            partialSteps++;
+            output.partialCap = partialCap(partialSteps);
+            return true;
+            }
+        else if (stage.equals(STAGE_VOICES))
+            {
+            output.voicesToSteal.incrementAndGet();
+            return true;
+            }
+        else return false;
+        }
+
+    void undo(String stage)
+        {
+        if (stage.equals(STAGE_SINE))
+            {
+            output.sinQualityOverride = -1;
+            }
+        else if (stage.equals(STAGE_PARTIALS))
+            {
+            partialSteps--;
+            output.partialCap = partialCap(partialSteps);
+            }
+        // Stolen voices stay asleep until they're next gated
+        }
+    }
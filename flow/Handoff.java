@@ -0,0 +1,76 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.locks.*;
+
+/**
+   A lightweight semaphore for handing a piece of work back and forth between two threads,
+   such as the Sound Output thread and a per-output thread, or the primary voice thread and a
+   per-voice thread.  The value is TRUE when one side is in charge and FALSE when the other is.  Each
+   side calls signal() to hand the work over, then await() to wait until it's handed back.
+
+   <p>This replaces synchronized / wait() / notify(), which inflates a monitor and goes through the
+   kernel on every handoff, a thousand or more times a second per thread.  Instead await() first
+   spins for up to a given number of iterations, which is usually long enough for the other side to
+   finish, and only then parks with LockSupport.  signal() only calls unpark() if someone is actually parked.
+   On a single processor spinning can't help, since the other side can't run while we spin, so we
+   park immediately.
+
+   <p>Exactly one thread may wait for TRUE and one (other) thread for FALSE.
+**/
+
+class Handoff
+    {
+    static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    volatile boolean value;
+    // The thread parked (or about to park) waiting for TRUE, or for FALSE.
+    // Each is written only by the thread that waits for that value.
+    volatile Thread trueWaiter;
+    volatile Thread falseWaiter;
+    int spins;
+
+    /** Builds a Handoff with the given initial VALUE, which spins for up to SPINS iterations before parking. */
+    public Handoff(boolean value, int spins)
+        {
+        this.value = value;
+        this.spins = (MULTIPROCESSOR ? spins : 0);
+        }
+
+    /** Returns the current value. */
+    public boolean get() { return value; }
+
+    /** Sets the value to VAL and wakes up the thread waiting for it, if any. */
+    public void signal(boolean val)
+        {
+        value = val;
+        Thread waiter = (val ? trueWaiter : falseWaiter);
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+        }
+
+    /** Blocks until the value is VAL. */
+    public void await(boolean val)
+        {
+        for(int i = spins; i > 0; i--)
+            {
+            if (value == val) return;
+            Thread.onSpinWait();
+            }
+
+        // We announce ourselves before checking the value one last time, and signal() sets the
+        // value before checking for us, so one of us must see the other.
+        Thread current = Thread.currentThread();
+        if (val) trueWaiter = current;
+        else falseWaiter = current;
+        while(value != val)
+            {
+            LockSupport.park(this);
+            }
+        if (val) trueWaiter = null;
+        else falseWaiter = null;
+        }
+    }
@@ -0,0 +1,93 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   A histogram of durations with power-of-two buckets in microseconds: bucket 0 holds durations under
+   1 microsecond, and bucket B > 0 holds durations from 2^(B-1) up to 2^B microseconds.  Recording a
+   duration doesn't allocate and doesn't lock, so it's cheap enough to do every block, from any thread.
+   Percentiles are only as accurate as the buckets, that is, within a factor of two.
+**/
+
+class Histogram
+    {
+    public static final int NUM_BUCKETS = 32;
+
+    AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    AtomicLong count = new AtomicLong();
+    AtomicLong total = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+
+    /** Records a duration, in nanoseconds. */
+    public void record(long nanos)
+        {
+        if (nanos < 0) nanos = 0;
+        int b = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+        if (b >= NUM_BUCKETS) b = NUM_BUCKETS - 1;
+        buckets.incrementAndGet(b);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m = max.get();
+        while(nanos > m && !max.compareAndSet(m, nanos))
+            m = max.get();
+        }
+
+    /** Clears the histogram. */
+    public void reset()
+        {
+        for(int i = 0; i < NUM_BUCKETS; i++)
+            buckets.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+        }
+
+    /** Returns the number of durations recorded. */
+    public long getCount() { return count.get(); }
+
+    /** Returns the sum of the durations recorded, in nanoseconds. */
+    public long getTotal() { return total.get(); }
+
+    /** Returns the longest duration recorded, in microseconds. */
+    public double getMaxMicros() { return max.get() / 1000.0; }
+
+    /** Returns the mean duration, in microseconds, or 0 if nothing has been recorded. */
+    public double getMeanMicros()
+        {
+        long c = count.get();
+        return (c == 0 ? 0 : total.get() / 1000.0 / c);
+        }
+
+    /** Returns the upper bound of the bucket holding the given percentile (0.0 ... 1.0), in microseconds,
+        or 0 if nothing has been recorded. */
+    public long getPercentileMicros(double percentile)
+        {
+        long c = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++)
+            c += buckets.get(i);
+        if (c == 0) return 0;
+
+        long target = (long)Math.ceil(c * percentile);
+        long sum = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++)
+            {
+            sum += buckets.get(i);
+            if (sum >= target)
+                return (1L << i);
+            }
+        return (1L << (NUM_BUCKETS - 1));
+        }
+
+    /** Returns a copy of the bucket counts. */
+    public long[] getBuckets()
+        {
+        long[] b = new long[NUM_BUCKETS];
+        for(int i = 0; i < NUM_BUCKETS; i++)
+            b[i] = buckets.get(i);
+        return b;
+        }
+    }
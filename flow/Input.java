@@ -976,6 +976,8 @@ public class Input
     // Pulses the Input. Called by Output's voice sync thread's go() method.
     void go()
         {
+        Events.MidiBatch event = (Events.MIDI_BATCH.isEnabled() ? new Events.MidiBatch() : null);
+        if (event != null) event.begin();
         MidiMessage[] messages = midi.getNextMessages();
 
         for (int i = 0; i < messages.length; i++)
@@ -1021,6 +1023,11 @@ public class Input
 
         midiClock.go();
         midiClock.syncTick();
+        if (event != null)
+            {
+            event.messages = messages.length;
+            event.commit();
+            }
         }
 
     }
@@ -219,8 +219,8 @@ public class Midi
     // All current MIDI Messages which have not been grabbed yet
     ArrayList<MidiMessage> nextMessages = new ArrayList<MidiMessage>();
     MidiMessage[] empty = new MidiMessage[0];
-    MidiMessage[] one = new MidiMessage[1];             // fast return
-    MidiMessage[] two = new MidiMessage[2];             // fast return
+    // Arrays to return, indexed by length and allocated as needed, so a chord doesn't allocate a new one every time
+    MidiMessage[][] returned = new MidiMessage[64][];
     
     /** Returns all MIDI Messages, in order, that have not yet been processed.  By calling this,
         the messages are processed and removed from this queue. */    
@@ -233,21 +233,17 @@ public class Midi
                 {
                 try
                     {
-                    // This is a little faster than just doing toArray()
+                    // This is a little faster than just doing toArray(), and doesn't allocate
                     int size = nextMessages.size();
                     if (size == 0) return empty;
-                    else if (size == 1)
+                    else if (size < returned.length)
                         {
-                        one[0] = nextMessages.get(0);
+                        MidiMessage[] ret = returned[size];
+                        if (ret == null) ret = returned[size] = new MidiMessage[size];
+                        for(int i = 0; i < size; i++)
+                            ret[i] = nextMessages.get(i);
                         nextMessages.clear();
-                        return one;
-                        }
-                    else if (size == 2)
-                        {
-                        two[0] = nextMessages.get(0);
-                        two[1] = nextMessages.get(1);
-                        nextMessages.clear();
-                        return two;
+                        return ret;
                         }
                     else
                         {
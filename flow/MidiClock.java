@@ -100,21 +100,21 @@ public class MidiClock
     // our estimated rate in TICKS PER PULSE
     double rateEstimate = 0;
     // The tick at last pulse.
-    int lastPulseRealTick = 0;
+    long lastPulseRealTick = 0;
     // The tick that we believe we currently are at.  This is a smoothed estimate. 
     double midiTickEstimate = 0;
     // Stores the same data as midiTickEstimate, and is updated when appropriate.
     // Volatile so that we can load it atomically as getTick()
-    volatile int syncTick = 0;
+    volatile long syncTick = 0;
     // Stores the same data as syncTick, and is updated during syncTick()
-    int tick = 0;
+    long tick = 0;
     
     public void syncTick()
         {
         tick = syncTick;
         }
         
-    public int getTick()
+    public long getTick()
         {
         return tick;
         }
@@ -132,7 +132,7 @@ public class MidiClock
         pulses = 0;
         clockStartTrigger = 1;
         midiTickEstimate = 0;
-        syncTick = (int)midiTickEstimate;
+        syncTick = (long)midiTickEstimate;
         state = STATE_WAITING_FOR_FIRST_PULSE;
         //        System.err.println("start");
         }
@@ -147,16 +147,16 @@ public class MidiClock
     // continues the clock
     synchronized void continueClock()
         {
-        int currentRealTick = input.getOutput().getTick();
+        long currentRealTick = input.getOutput().getPublishedTick();
         midiTickEstimate = getPulses() * TICKS_PER_PULSE + (currentRealTick - lastPulseRealTick) / rateEstimate * TICKS_PER_PULSE;
-        syncTick = (int)midiTickEstimate;
+        syncTick = (long)midiTickEstimate;
         state = STATE_WAITING_FOR_FIRST_PULSE;
         }
 
     // pulses the clock
     synchronized void pulseClock()
         {
-        int currentRealTick = input.getOutput().getTick();
+        long currentRealTick = input.getOutput().getPublishedTick();
         
         if (isRunning())
             {
@@ -206,7 +206,7 @@ public class MidiClock
         {        
         if (state == STATE_RUNNING)
             {
-            int currentRealTick = input.getOutput().getTick();
+            long currentRealTick = input.getOutput().getPublishedTick();
             double newPulses = (currentRealTick - lastPulseRealTick) / rateEstimate;
             if (newPulses >= BIG_PULSES_BEHIND)
                 return;  // we haven't been getting many pulses lately
@@ -231,7 +231,7 @@ public class MidiClock
                 // lock it
                 midiTickEstimate = midiTickTarget;
                 }
-            syncTick = (int)midiTickEstimate;
+            syncTick = (long)midiTickEstimate;
             }
         }
         
@@ -140,19 +140,19 @@ public abstract class Modulation implements Cloneable
 
     /** Called when the system wishes the Modulation to reset itself to a pristine state. 
         Be sure to call super.reset(); */
-    public void reset() { }
+    public void reset() { dirty = true; }
 
     /** Called when the system wishes to inform the Modulation that a NOTE ON message was received. 
         Be sure to call super.gate(); */
-    public void gate() { }
+    public void gate() { dirty = true; }
 
     /** Called when the system wishes to inform the Modulation that a NOTE OFF message was received. 
         Be sure to call super.release(); */
-    public void release() { }
+    public void release() { dirty = true; }
 
     /** Called when the system wishes to inform the Modulation that a MIDI START message was received. 
         Be sure to call super.restart(); */
-    public void restart() { }
+    public void restart() { dirty = true; }
         
     void _go()
         {
@@ -170,6 +170,117 @@ public abstract class Modulation implements Cloneable
             }
         }
                 
+    /** Returns true if go() does something beyond computing this Modulation's outputs, such as changing
+        the Sound or other modules, so the Sound must call it even when nothing it emits depends on those
+        outputs.  By default, false.  See Sound.go() */
+    public boolean hasSideEffects() { return false; }
+
+    /** Returns false if go() may still change this Modulation's outputs or state on its own, other than in 
+        response to its inputs, once its Sound has been released and fallen silent: for example because it 
+        is driven by time or randomness, or holds earlier partials it has yet to play.  A Sound is only put 
+        to sleep when every Modulation it runs returns true, because a sleeping Sound's Modulations don't 
+        have go() called, and so would come back in a different state.  By default, true.  See Output.updateSleep() */
+    public boolean canSleep() { return true; }
+
+    /** Override this to return true if go() computes this Modulation's outputs entirely from its 
+        Modulation inputs, its Unit inputs, and its options, so that if none of them have changed, 
+        calling go() again would leave the outputs exactly as they are.  Such a Modulation mustn't 
+        fire triggers or depend on time or randomness.  If it depends on something else, such as the 
+        Sound's pitch, it should override hasChanged() as well.  Stateless Modulations are skipped 
+        on blocks where nothing has changed.  By default, false.  See needsGo() */
+    public boolean isStateless() { return false; }
+
+    /** Override this in a stateless Modulation to return true if something go() depends on, other
+        than its inputs and options, has changed since go() was last called.  By default, false. */
+    protected boolean hasChanged() { return false; }
+
+    // If true, needsGo() returns true next time regardless
+    boolean dirty = true;
+    // The Modulation input values when needsGo() was last called
+    double[] lastModulationValues;
+    // The option values when needsGo() was last called
+    int[] lastOptionValues;
+
+    /** Forces a stateless Modulation to have its go() method called on the next block.  */
+    public void setDirty() { dirty = true; }
+
+    /** Returns false if this Modulation is stateless and nothing it depends on has changed since 
+        the last time this method was called, so there's no need to call go().  If this 
+        method returns true, you must call go(). */
+    public boolean needsGo()
+        {
+        if (!isStateless())
+            {
+            dirty = true;                   // so we don't compare against stale values if we become stateless
+            return true;
+            }
+        boolean changed = inputsChanged() | hasChanged() | dirty;
+        dirty = false;
+        return changed;
+        }
+        
+    // Returns true if any Modulation input or option has changed since it was last called, 
+    // or if a Modulation input has been triggered.  Units override this to check their Unit inputs.
+    boolean inputsChanged()
+        {
+        boolean changed = false;
+        
+        int len = modulations.length;
+        if (lastModulationValues == null || lastModulationValues.length != len)
+            {
+            lastModulationValues = new double[len];
+            changed = true;
+            }
+        for(int i = 0; i < len; i++)
+            {
+            double val = modulate(i);
+            if (val != lastModulationValues[i])
+                {
+                lastModulationValues[i] = val;
+                changed = true;
+                }
+            if (isTriggered(i)) changed = true;
+            }
+        
+        len = getNumOptions();
+        if (lastOptionValues == null || lastOptionValues.length != len)
+            {
+            lastOptionValues = new int[len];
+            changed = true;
+            }
+        for(int i = 0; i < len; i++)
+            {
+            int val = getOptionValue(i);
+            if (val != lastOptionValues[i])
+                {
+                lastOptionValues[i] = val;
+                changed = true;
+                }
+            }
+        return changed;
+        }
+
+    /** Override this to return true if this Modulation is stateless (see isStateless()) and its go()
+        doesn't depend on anything particular to its Sound, such as its pitch, gate, or velocity.
+        If such a Modulation's inputs are all Constants or other shared Modulations, every Sound in 
+        its group would compute exactly the same outputs.  So the Output computes them once per 
+        block, in the group's first Sound, and the other Sounds share them.  By default, false.
+        See Sound.buildPlan() */
+    public boolean isVoiceIndependent() { return false; }
+
+    // Whether this Modulation's outputs are shared with the other Sounds in its group
+    boolean shared;
+
+    // Sets our outputs to those of FROM, the same module in another Sound, which has 
+    // already been updated this block.  Units override this to share their arrays.
+    void share(Modulation from)
+        {
+        System.arraycopy(from.modulationOutputs, 0, modulationOutputs, 0, modulationOutputs.length);
+        }
+        
+    // Stops sharing outputs with another Sound.  Units override this to take back their arrays.
+    void unshare() { }
+
 
 
     /// OPTIONS
@@ -302,6 +413,8 @@ public abstract class Modulation implements Cloneable
             lastModulations[num] = (Constant)mod;
         modulations[num] = mod;
         modulationIndexes[num] = index;
+        dirty = true;
+        if (sound != null) sound.invalidatePlan();
         }
         
     /** Returns Input Modulation port NUM. */
@@ -334,6 +447,8 @@ public abstract class Modulation implements Cloneable
         lastModulations[num] = defaultModulations[num];
         modulations[num] = defaultModulations[num];
         modulationIndexes[num] = 0;
+        dirty = true;
+        if (sound != null) sound.invalidatePlan();
         }
                 
     /** Returns Input Modulation port NUM to its last Constant value. */
@@ -341,6 +456,8 @@ public abstract class Modulation implements Cloneable
         {
         modulations[num] = lastModulations[num];
         modulationIndexes[num] = 0;
+        dirty = true;
+        if (sound != null) sound.invalidatePlan();
         }
                 
     /** Returns the number of Input Modulation ports. */
@@ -683,7 +800,7 @@ public abstract class Modulation implements Cloneable
     
     /** Returns the clock tick value.  If we are syncing to MIDI clock,
         this is returned.  Else the global wall clock is returned. */
-    public int getSyncTick(boolean sync)
+    public long getSyncTick(boolean sync)
         {
         Output output = sound.getOutput();
         MidiClock clock = output.getInput().getMidiClock();
@@ -823,11 +940,33 @@ public abstract class Modulation implements Cloneable
         // Current output triggers
         obj.triggered = (boolean[])(triggered.clone());
         obj.triggerCount = (int[])(triggerCount.clone());
+        
+        // The copy hasn't run go() yet, so it must not compare against the last values its original saw,
+        // and it isn't shared until its own Sound shares it
+        obj.dirty = true;
+        obj.lastModulationValues = null;
+        obj.lastOptionValues = null;
+        obj.shared = false;
 
         return obj;
         }
 
 
+    ///// PROFILING
+    
+    // How quickly profileNanos follows new timings
+    static final double PROFILE_ALPHA = 0.1;
+    // The smoothed time go() has taken, in nanoseconds, on the blocks the profiler has timed.
+    // Only written by the thread running this Modulation's Sound.
+    double profileNanos;
+    
+    void profile(long nanos) { profileNanos = profileNanos * (1.0 - PROFILE_ALPHA) + nanos * PROFILE_ALPHA; }
+    
+    /** Returns how long go() has been taking, smoothed, in nanoseconds, or 0 if it hasn't been profiled.  
+        See Output.setProfiling(...) */
+    public double getProfileNanos() { return profileNanos; }
+    
+
     ///// JSON Serialization
     public static final int SERIALIZATION_NOT_FOUND = -1;
     String id;
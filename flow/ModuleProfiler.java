@@ -0,0 +1,72 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.*;
+
+/**
+   Gathers the per-Modulation timings collected while the Output is profiling (see Output.setProfiling(...))
+   into one Entry per module in the patch.  Every Sound holds the same modules in the same order, so the
+   same module in different voices is found by its position in the Sound.  An Entry's cost is the sum of
+   that module's smoothed go() time over the voices which are awake, that is, what it costs the primary
+   voice thread per block.
+**/
+
+public class ModuleProfiler
+    {
+    /** The cost of one module in the patch. */
+    public static class Entry
+        {
+        /** The module's position in each Sound */
+        public int index;
+        /** The module in Sound 0, which is the one displayed in the Rack */
+        public Modulation modulation;
+        /** The module's name */
+        public String name;
+        /** Time per block summed over the awake voices, in microseconds */
+        public double micros;
+        /** The number of awake voices */
+        public int voices;
+        }
+
+    /** Returns an Entry for each module in the patch, in the Sound's order. */
+    public static Entry[] getProfile(Output output)
+        {
+        output.lock();
+        try
+            {
+            int numSounds = output.getNumSounds();
+            if (numSounds == 0) return new Entry[0];
+
+            Sound first = output.getSound(0);
+            int len = first.getNumRegistered();
+            Entry[] entries = new Entry[len];
+            for(int i = 0; i < len; i++)
+                {
+                entries[i] = new Entry();
+                entries[i].index = i;
+                entries[i].modulation = first.getRegistered(i);
+                entries[i].name = entries[i].modulation.getNameForModulation();
+                }
+
+            for(int s = 0; s < numSounds; s++)
+                {
+                if (output.asleep[s]) continue;
+                Sound sound = output.getSound(s);
+                int n = Math.min(len, sound.getNumRegistered());
+                for(int i = 0; i < n; i++)
+                    {
+                    entries[i].micros += sound.getRegistered(i).getProfileNanos() / 1000.0;
+                    entries[i].voices++;
+                    }
+                }
+            return entries;
+            }
+        finally
+            {
+            output.unlock();
+            }
+        }
+    }
@@ -11,6 +11,8 @@ import flow.modules.*;
 import flow.utilities.*;
 import org.json.*;
 import java.io.*;
+import java.lang.invoke.*;
+import java.util.concurrent.atomic.*;
 
 /**
    Output is the root singleton object of the synthesizer.  It is responsible for
@@ -70,9 +72,60 @@ public class Output
     public static final int SIN_QUALITY_LOW = 0;
     public static final int SIN_QUALITY_MEDIUM = 1;
     public static final int SIN_QUALITY_HIGH = 2;
+    /** Each partial is a phasor, rotated every sample by a complex multiply rather than calling a sine function. */
+    public static final int SIN_QUALITY_RECURSIVE = 3;
     public static final int SIN_QUALITY_DEFAULT = SIN_QUALITY_LOW;
     static int sinQuality = SIN_QUALITY_DEFAULT;
 
+    /** The standard engine: buildSample() computes one sample at a time across all partials. */
+    public static final int ENGINE_SCALAR = 0;
+    /** The SIMD engine in VectorOscillators.  Requires --add-modules jdk.incubator.vector, 
+        else we fall back to ENGINE_SCALAR.  It has measured slower than ENGINE_SCALAR (the Drawbars
+        patch renders in about 3.0-3.4 seconds against 1.7-1.8), so the Rack doesn't offer it: it can only
+        be chosen with the Engine preference, for example <tt>-DEngine=1</tt>, to benchmark it. */
+    public static final int ENGINE_VECTOR = 1;
+    /** The block engine in BlockOscillators: the same results as ENGINE_SCALAR, but computed a block at a time per partial. */
+    public static final int ENGINE_BLOCK = 2;
+    /** The inverse-FFT overlap-add engine in SpectralOscillators.  Only used for voices with at least
+        Prefs.getLastSpectralThreshold() live partials in a block; the others fall back to ENGINE_SCALAR. */
+    public static final int ENGINE_SPECTRAL = 3;
+    public static final int ENGINE_DEFAULT = ENGINE_SCALAR;
+    /** The fewest live partials in a voice for which we use ENGINE_SPECTRAL.  Measured as in OscillatorsBenchmark, it builds a voice's block
+        in about 4.1, 6.2, and 8.7 microseconds at 64, 128, and 256 partials, against 6.0, 13.2, and 21.4 for ENGINE_BLOCK
+        and 9.6, 18.4, and 38.3 for ENGINE_SCALAR, so it's faster at every number of partials we allow.  But it isn't
+        identical to ENGINE_SCALAR: see Prefs.getLastSpectralThreshold(). */
+    public static final int DEFAULT_SPECTRAL_THRESHOLD = 64;
+    static int engine = ENGINE_DEFAULT;
+    
+    /** How many times the threads spin, checking whether their work has been handed to them, before going to sleep.  
+        See Handoff.  About 1000 spins is on the order of 10-50 microseconds, while a block is usually about 725.  */
+    public static final int DEFAULT_HANDOFF_SPINS = 1000;
+    static int handoffSpins = DEFAULT_HANDOFF_SPINS;
+    
+    /** How many blocks of partials the primary voice thread may compute ahead of the Output thread.  
+        More absorbs hiccups in the voice thread, at the cost of that many blocks of latency.  */
+    public static final int DEFAULT_VOICE_LEAD = 1;
+    static int voiceLead = DEFAULT_VOICE_LEAD;
+
+    /** How many blocks a released voice's partials must stay below MINIMUM_VOLUME before we put it to sleep.
+        0 means voices never sleep.  */
+    public static final int DEFAULT_SLEEP_BLOCKS = 64;
+    static int sleepBlocks = DEFAULT_SLEEP_BLOCKS;
+
+    /** Whether each Swap holds its partials as floats rather than doubles.  See Prefs.getLastSinglePrecision(). */
+    static boolean singlePrecision = false;
+    
+    /** By default we don't print the metrics periodically.  See OutputMetrics. */
+    public static final int DEFAULT_METRICS_LOG_INTERVAL = 0;
+    
+    /** The Governor's default policy: the order in which it degrades things.  By default it's empty, so there's 
+        no Governor: it has to be turned on with a policy such as "sine,partials,voices".  See Governor. */
+    public static final String DEFAULT_GOVERNOR_POLICY = "";
+    /** The Governor steps down when the fraction of each block spent rendering goes above this percentage. */
+    public static final int DEFAULT_GOVERNOR_HIGH = 85;
+    /** The Governor steps back up when the fraction of each block spent rendering stays below this percentage. */
+    public static final int DEFAULT_GOVERNOR_LOW = 50;
+
     /** Number of samples emitted before reading the next partials output.
         Ideally this is 1; but it uses more juice.  If this is a large number
         then it contributes to lag because we interpolate from the previous partials
@@ -130,8 +183,21 @@ public class Output
     // The Audio Format
     AudioFormat audioFormat;
     
-    // The audio output
-    SourceDataLine sdl;
+    // The audio output.  This is normally an AudioSink.Line, built by setMixer(...).  Once the Sound Output
+    // thread is running, only it changes the sink: see setAudioSink(...)
+    volatile AudioSink sink;
+
+    // The sink which setAudioSink(...) has asked the Sound Output thread to switch to, if sinkRequested.
+    // Both are guarded by sinkLock.
+    AudioSink requestedSink;
+    volatile boolean sinkRequested;
+    final Object sinkLock = new Object();
+
+    // How long setAudioSink(...) waits for the Sound Output thread to switch sinks, in milliseconds
+    static final long SINK_SWAP_TIMEOUT = 1000;
+
+    // The Sound Output thread, or null if we're offline or it hasn't been started yet
+    Thread outputThread;
 
     // Audio buffer, which the audio output drains.
     // It's the Output Thread's job to keep this sucker filled as much as possible.
@@ -153,10 +219,26 @@ public class Output
         stereo = Prefs.getLastStereo();
         skip = Prefs.getLastSkip();   
         sinQuality = Prefs.getLastSinQuality();   
+        engine = Prefs.getLastEngine();
+        handoffSpins = Prefs.getLastHandoffSpins();
+        voiceLead = Prefs.getLastVoiceLead();
+        sleepBlocks = Prefs.getLastSleepBlocks();
+        singlePrecision = Prefs.getLastSinglePrecision();
         }
     
     public Output()
         {
+        this(false);
+        }
+        
+    /** Creates an Output.  If OFFLINE is true, then no audio device is opened and no Sound Output thread
+        is started: instead the caller is expected to alternately call go() and renderBlock() itself, as 
+        fast as it likes, and do what it wants with the resulting audio buffer, typically writing it to
+        an AudioSink.  See Render.java.  Otherwise the audio goes to the sink named in Prefs.getLastAudioSink(),
+        if any, or else to the audio device.  */
+    public Output(boolean offline)
+        {
+        this.offline = offline;
         for(int i = 0; i < MAX_GROUPS; i++)
             {
             group[i] = new Group();
@@ -169,34 +251,128 @@ public class Output
         randomSeed = System.currentTimeMillis();
         sounds = new Sound[numVoices];
         positions = new double[numVoices][Unit.NUM_PARTIALS];
+        phasorCos = new double[numVoices][Unit.NUM_PARTIALS];
+        phasorSin = new double[numVoices][Unit.NUM_PARTIALS];
+        rotationCos = new double[numVoices][Unit.NUM_PARTIALS];
+        rotationSin = new double[numVoices][Unit.NUM_PARTIALS];
+        rotationIncrements = new double[numVoices][Unit.NUM_PARTIALS];
+        blockRotationCos = new double[numVoices][Unit.NUM_PARTIALS];
+        blockRotationSin = new double[numVoices][Unit.NUM_PARTIALS];
+        blockRotationIncrements = new double[numVoices][Unit.NUM_PARTIALS];
+        for(int i = 0; i < numVoices; i++)
+            {
+            resetPositions(i);
+            Arrays.fill(rotationCos[i], 1.0);
+            Arrays.fill(blockRotationCos[i], 1.0);
+            }
 
         // I'd like to do stereo but I can't get Java to do it without glitching
         audioFormat = new AudioFormat( SAMPLING_RATE, 16, (isStereo() ? 2 : 1), true, false );
 
-        Mixer.Info[] mixers = getSupportedMixers();
-        String mix = Prefs.getLastAudioDevice();
-        boolean found = false;
-        for (int i = 0; i < mixers.length; i++)
+        String sinkName = Prefs.getLastAudioSink();
+        if (!offline && sinkName != null && sinkName.length() > 0)
             {
-            if (mixers[i].getName().equals(mix))
+            try
+                {
+                setAudioSink(AudioSink.forName(sinkName, isStereo() ? 2 : 1));
+                }
+            catch (IOException ex)
                 {
-                found = true;
-                setMixer(mixers[i]);
+                System.err.println("Output.Output() WARNING: couldn't open the audio sink " + sinkName + ", using the audio device instead: " + ex);
                 }
             }
-        if (!found) setMixer(null); // sets to the first one, which is the default normally
+            
+        if (!offline && sink == null)
+            {
+            Mixer.Info[] mixers = getSupportedMixers();
+            String mix = Prefs.getLastAudioDevice();
+            boolean found = false;
+            for (int i = 0; i < mixers.length; i++)
+                {
+                if (mixers[i].getName().equals(mix))
+                    {
+                    found = true;
+                    setMixer(mixers[i]);
+                    }
+                }
+            if (!found) setMixer(null); // sets to the first one, which is the default normally
+            }
 
-        swap = new Swap();
-        with = new Swap();
-        startOutputThread();
+        asleep = new boolean[numVoices];
+        quietBlocks = new int[numVoices];
+        sleepCounts = new long[numVoices];
+        wakeCounts = new long[numVoices];
+        releasedBlocks = new int[numVoices];
+        stealBlocks = new int[numVoices];
+        ring = new SwapRing(voiceLead);
+        with = ring.current();
+        swapWaitNanos = (long)(skip * 1000000000.0 / SAMPLING_RATE / 4);      // a quarter of a block
+        currentAmplitudes = new double[numVoices][Unit.NUM_PARTIALS];
+        partials = new PartialFrame[numVoices];
+        for(int i = 0; i < numVoices; i++)
+            partials[i] = new PartialFrame();           // until the first swap, everything is in use
+        oscillators = loadOscillators();
+        String policy = Prefs.getLastGovernorPolicy();
+        if (!offline && policy.trim().length() > 0)
+            governor = new Governor(this, policy, Prefs.getLastGovernorHigh() / 100.0, Prefs.getLastGovernorLow() / 100.0);
+        if (!offline)
+            metrics.register(Prefs.getLastMetricsLogInterval());
+        if (offline)
+            startPerOutputThreads();
+        else
+            {
+            startOutputThread();
+            
+            // Close the sink when we quit, so that a Wav file gets its header and a Stream its last bytes
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    setAudioSink(null);
+                    }
+                }, "Close Audio Sink"));
+            }
 
         input = new Input(this);
-        for(int i = 0; i < standardOrders.length; i++)
-            standardOrders[i] = (byte)i;
             
         audioInput = new AudioInput(this);
         }
 
+    // Are we rendering offline?  If so, there is no SourceDataLine and no Sound Output thread.
+    boolean offline;
+    
+    // Degrades the sound if we're running out of time, or null if we're offline or it's turned off
+    Governor governor;
+    
+    // Performance counters
+    OutputMetrics metrics = new OutputMetrics(this);
+    
+    /** When profiling, each Sound times its Modulations' go() methods once every PROFILE_INTERVAL blocks. */
+    public static final int PROFILE_INTERVAL = 8;
+    // PROFILE_INTERVAL if we're profiling, else 0
+    volatile int profileInterval = 0;
+    
+    /** Turns on or off timing each Modulation's go() method.  See ModuleProfiler. */
+    public void setProfiling(boolean val) { profileInterval = (val ? PROFILE_INTERVAL : 0); }
+    
+    /** Returns whether we're timing each Modulation's go() method. */
+    public boolean isProfiling() { return profileInterval > 0; }
+    
+    /** Returns the Output's performance counters. */
+    public OutputMetrics getMetrics() { return metrics; }
+    
+    // How long the last call to renderBlock() spent rendering, not counting waiting for partials
+    long renderNanos;
+    // How long the last call to go() took, not counting waiting for room in the ring.  Written by the primary 
+    // voice thread and read by the Output thread, for the Governor.
+    volatile long voiceNanos;
+    
+    /** Returns a description of what the Governor is doing, or null if there is no Governor. */
+    public String getGovernorDescription() { Governor g = governor; return (g == null ? null : g.getDescription()); }
+    
+    /** Returns true if the Output was created offline, that is, without an audio device or a Sound Output thread. */
+    public boolean isOffline() { return offline; }
+
     /** Returns the currently used Mixer */
     public Mixer.Info getMixer()
         {
@@ -208,14 +384,13 @@ public class Output
         {
         try
             {
-            if (sdl != null)
-                sdl.stop();
             if (mixer == null)
                 {
                 Mixer.Info[] m = getSupportedMixers();
                 if (m.length > 0)
                     mixer = m[0];
                 }
+            SourceDataLine sdl;
             if (mixer == null)
                 sdl = AudioSystem.getSourceDataLine( audioFormat );
             else
@@ -223,11 +398,75 @@ public class Output
             sdl.open(audioFormat, bufferSize * (isStereo() ? 2 : 1));
             sdl.start();
 
+            setAudioSink(new AudioSink.Line(sdl, (bufferSize - 128) * (isStereo() ? 2 : 1)));
             this.mixer = mixer;
             }
         catch (LineUnavailableException ex) { throw new RuntimeException(ex); }
         }
 
+    /** Returns the current AudioSink, or null if there is none. */
+    public AudioSink getAudioSink() { return sink; }
+    
+    /** Sets the AudioSink which receives the Output's audio, closing the old one.  Normally this is an AudioSink.Line 
+        for the current Mixer, but you can replace it with (say) a Wav or Null sink, or with null to stop the audio.
+        Once the Sound Output thread is running, it makes the switch itself between blocks, so that the old sink is
+        never closed in the middle of a write.  We wait up to SINK_SWAP_TIMEOUT milliseconds for it to do so. */
+    public void setAudioSink(AudioSink sink)
+        {
+        if (outputThread == null || Thread.currentThread() == outputThread)
+            {
+            swapAudioSink(sink);
+            return;
+            }
+
+        synchronized(sinkLock)
+            {
+            if (sinkRequested && requestedSink != null)        // superseded before it was ever written to
+                closeAudioSink(requestedSink);
+            requestedSink = sink;
+            sinkRequested = true;
+            long end = System.currentTimeMillis() + SINK_SWAP_TIMEOUT;
+            long remaining;
+            while (sinkRequested && (remaining = end - System.currentTimeMillis()) > 0)
+                {
+                try { sinkLock.wait(remaining); }
+                catch (InterruptedException ex) { break; }
+                }
+            if (sinkRequested)
+                System.err.println("Output.setAudioSink() WARNING: the Sound Output thread is still writing to the old sink, it will switch when it's done");
+            }
+        }
+
+    // Switches to the sink requested in setAudioSink(...), if any.  Called by the Sound Output thread between blocks.
+    void updateAudioSink()
+        {
+        if (sinkRequested)
+            {
+            synchronized(sinkLock)
+                {
+                swapAudioSink(requestedSink);
+                requestedSink = null;
+                sinkRequested = false;
+                sinkLock.notifyAll();
+                }
+            }
+        }
+
+    // Switches to the given sink and closes the old one
+    void swapAudioSink(AudioSink sink)
+        {
+        AudioSink old = this.sink;
+        this.sink = sink;
+        if (old != null)
+            closeAudioSink(old);
+        }
+
+    void closeAudioSink(AudioSink sink)
+        {
+        try { sink.close(); }
+        catch (IOException ex) { System.err.println("Output.setAudioSink() WARNING: couldn't close the old sink: " + ex); }
+        }
+
     /** Returns the available mixers which support the given audio format. */
     public Mixer.Info[] getSupportedMixers()
         {
@@ -281,20 +520,41 @@ public class Output
                 
 
     /// Current Tick
-    // Note NOT a long.  :-(  See note at getTick()
-    private volatile int tick = 0;
-    int syncTick = 0;
+    // The tick is counted by the Sound Output thread in TICK, a plain long which only it touches, and
+    // published once per block into PUBLISHED_TICK with a release write.  The voice threads read
+    // it with an acquire read at the start of each go().  This gives us a 64-bit tick without paying
+    // for a volatile write every sample.  See also getTick() and getPublishedTick()
+    private long tick = 0;
+    private long publishedTick = 0;
+    long syncTick = 0;
+    
+    static final VarHandle PUBLISHED_TICK;
+    static
+        {
+        try
+            {
+            PUBLISHED_TICK = MethodHandles.lookup().findVarHandle(Output.class, "publishedTick", long.class);
+            }
+        catch (ReflectiveOperationException ex)
+            {
+            throw new ExceptionInInitializerError(ex);
+            }
+        }
 
-    void syncTick() { syncTick = tick; }
+    // Called by the Sound Output thread at the end of each block
+    void publishTick() { PUBLISHED_TICK.setRelease(this, tick); }
 
-    /** Returns the Output's current tick.  Note that TICK is presently an INTEGER.  This means it will 
-        roll over to a negative value once every 13.5 hours at 44100, once every 12.4 hours at 48000, 
-        or once every 27 hours at 22050.  It's not implemented as a long
-        because there's no easy way to make tick a high-resolution rapid threadsafe counter without incurring
-        a considerable efficiency cost, either as a volatile long (volatiles are good for occasional 
-        writes by one one thread and lots of reads by another thread -- we have the opposite situation)
-        or as a mutex.  This may change in the future, so be prepared to update ints to longs.  ;-)  */
-    public int getTick() { return syncTick; }
+    void syncTick() { syncTick = (long)PUBLISHED_TICK.getAcquire(this); }
+
+    /** Returns the Output's current tick, that is, the number of samples output so far, as of the start of 
+        the current go().  The tick is a long, so it won't roll over for a few million years.  It only advances
+        once per block, so every Sound sees the same tick for the whole of a go(). */
+    public long getTick() { return syncTick; }
+
+    /** Returns the tick most recently published by the Sound Output thread.  Unlike getTick(), this is safe to
+        call from threads other than the voice threads, such as the MIDI thread, but it may change in the 
+        middle of a go(). */
+    public long getPublishedTick() { return (long)PUBLISHED_TICK.getAcquire(this); }
 
 
 
@@ -331,7 +591,31 @@ public class Output
     */
     public void lock() 
         { 
-        soundLock.lock(); 
+        // Most of the time nobody holds the lock, so we only time the ones which have to wait.
+        // Unlike tryLock(), tryLock(0, ...) doesn't barge ahead of threads already waiting.
+        if (!tryLockNow())
+            {
+            Events.LockWait event = (Events.LOCK_WAIT.isEnabled() ? new Events.LockWait() : null);
+            if (event != null) event.begin();
+            long start = System.nanoTime();
+            soundLock.lock(); 
+            metrics.lockWaits.record(System.nanoTime() - start);
+            if (event != null) event.commit();
+            }
+        }
+    
+    // Acquires the lock if it's free and nobody is waiting for it, else returns false
+    boolean tryLockNow()
+        {
+        try
+            {
+            return soundLock.tryLock(0, java.util.concurrent.TimeUnit.NANOSECONDS);
+            }
+        catch (InterruptedException ex)
+            {
+            Thread.currentThread().interrupt();         // lock() doesn't respond to interrupts, so leave it for the caller
+            return false;
+            }
         }
     
     
@@ -453,23 +737,130 @@ public class Output
         
 
 
-    // This is the lightweight semaphore between the Output thread and the primary
-    // voice thread.  The primary voice thread sets this to TRUE to indicate that 
-    // it has new partials to emit.  The Output thread grabs the partials and
-    // starts emitting them, and then sets the variable to TRUE.  The primary
-    // voice thread works in the background on the next partials, then spin-waits
-    // until the variable is TRUE, then submits new partials etc.
-    volatile boolean emitsReady;
+    // This carries the partials from the primary voice thread to the Output thread.
+    // The primary voice thread fills the next free Swap and publishes it, parking
+    // if the ring is full.  The Output thread grabs the next published Swap, if any, 
+    // and emits it, while the primary voice thread works in the background on the 
+    // next partials.
+    SwapRing ring;
+    
+    // If TRUE, the Output thread has fallen behind (the audio device starved), so the 
+    // next checkAndSwap() skips to the newest partials.  Only used by the Output thread.
+    boolean catchUp;
+    
+    // How long the Output thread waits for late partials before reusing the old ones
+    long swapWaitNanos;
     
     
     // This reminds the Primary Voice Thread that it has already created the
     // per-voice threads.
     boolean soundThreadsStarted = false;
 
-    // Locks for negotiating between the primary voice thread and the per-voice threads
-    // These are managed via blockVoiceUntil() and signalVoice()
-    Object[] voiceLocks;
-    boolean[] lightweightSemaphores;
+    // Runs go() on each Sound on the per-voice threads
+    Scheduler voiceScheduler;
+
+    //// SILENT-VOICE SLEEP
+    ////
+    //// Once a voice has been released and its partials have stayed below MINIMUM_VOLUME for
+    //// sleepBlocks blocks, we put it to sleep: its Sound no longer has go() called, and the Output
+    //// thread no longer synthesizes it.  It wakes up on its next gate() or reset(), which also resets
+    //// its phases.  Voices whose Sounds hold something which could still become audible, or which 
+    //// would otherwise come back in a different state, such as a Delay or a free LFO, never sleep.  
+    //// See Sound.canSleep()
+    //// All of this is guarded by lock(), except for the counts, which are just for display.
+
+    boolean[] asleep;
+    int[] quietBlocks;
+    long[] sleepCounts;
+    long[] wakeCounts;
+    // How many blocks since each voice was released
+    int[] releasedBlocks;
+    // For voices being stolen, how many more blocks to fade them out before they go to sleep
+    int[] stealBlocks;
+    // How many voices the Governor would like us to steal
+    AtomicInteger voicesToSteal = new AtomicInteger();
+    // How many blocks we fade out a stolen voice, by zeroing its partials, before putting it to sleep.
+    // The Output thread's smoothing fades it to about 0.1% over 8 blocks.
+    static final int STEAL_BLOCKS = 8;
+    
+    /** Returns whether the given voice is asleep. */
+    public boolean isAsleep(int voice) { lock(); try { return asleep[voice]; } finally { unlock(); } }
+    /** Returns how many times the given voice has been put to sleep. */
+    public long getSleepCount(int voice) { return sleepCounts[voice]; }
+    /** Returns how many times the given voice has been woken up. */
+    public long getWakeCount(int voice) { return wakeCounts[voice]; }
+
+    /** Wakes up the given voice if it's asleep.  Called by Sound.gate() and Sound.reset(). */
+    public void wake(int voice)
+        {
+        lock();
+        try
+            {
+            quietBlocks[voice] = 0;
+            releasedBlocks[voice] = 0;
+            stealBlocks[voice] = 0;
+            if (asleep[voice])
+                {
+                asleep[voice] = false;
+                wakeCounts[voice]++;
+                }
+            }
+        finally
+            {
+            unlock();
+            }
+        }
+
+    // Called from go() while the Swap is being filled.  Counts how long the released voice I has been 
+    // silent, and puts it to sleep if it's been long enough.
+    void updateSleep(int i, Swap swap)
+        {
+        if (sounds[i].isGated()) releasedBlocks[i] = 0;
+        else releasedBlocks[i]++;
+        
+        if (stealBlocks[i] > 0)
+            {
+            // fade out by zeroing the partials
+            swap.partials[i].silence();
+            if (--stealBlocks[i] == 0)
+                {
+                asleep[i] = true;
+                sleepCounts[i]++;
+                }
+            }
+        else if (sleepBlocks > 0 && !asleep[i] && !sounds[i].isGated() && sounds[i].canSleep())
+            {
+            // If the partials add up to no more than MINIMUM_VOLUME, none of them can be live
+            if (swap.partials[i].getTotalAmplitude() <= MINIMUM_VOLUME)
+                {
+                if (++quietBlocks[i] >= sleepBlocks)
+                    {
+                    asleep[i] = true;
+                    sleepCounts[i]++;
+                    }
+                }
+            else quietBlocks[i] = 0;
+            }
+        else quietBlocks[i] = 0;
+        swap.sleeping[i] = asleep[i];
+        }
+
+    // Called from go().  Starts stealing up to N of the released voices which were released the longest ago.
+    void stealVoices(int n, int ns)
+        {
+        for( ; n > 0; n--)
+            {
+            int oldest = -1;
+            for(int i = 0; i < ns; i++)
+                {
+                if (!asleep[i] && stealBlocks[i] == 0 && !sounds[i].isGated() &&
+                    (oldest == -1 || releasedBlocks[i] > releasedBlocks[oldest]))
+                    oldest = i;
+                }
+            if (oldest == -1) return;
+            stealBlocks[oldest] = STEAL_BLOCKS;
+            }
+        }
         
     volatile boolean onlyPlayFirstSound;
     /** Returns whether we are only playing the first sound, or all sounds. */
@@ -491,9 +882,7 @@ public class Output
     static class Swap
         {
         double[] pan;
-        double[][] amplitudes;
-        double[][] frequencies;
-        byte[][] orders;
+        PartialFrame[] partials;
         double[] pitches;
         double[] velocities;
         float reverbWet = 0.5f;
@@ -501,63 +890,407 @@ public class Output
         float reverbDamp = 0.5f;
         boolean dephase[];
         boolean reset[];
+        boolean sleeping[];
               
         public Swap()
             {
             pan = new double[numVoices];
-            amplitudes = new double[numVoices][Unit.NUM_PARTIALS];
-            frequencies = new double[numVoices][Unit.NUM_PARTIALS];
-            orders = new byte[numVoices][Unit.NUM_PARTIALS];
+            partials = new PartialFrame[numVoices];
+            for(int i = 0; i < numVoices; i++)
+                partials[i] = new PartialFrame(Unit.NUM_PARTIALS, singlePrecision);
             pitches = new double[numVoices];
             velocities = new double[numVoices];
             dephase = new boolean[numVoices];
             reset = new boolean[numVoices];
+            sleeping = new boolean[numVoices];
             }
         }
     
-    // The primary voice thread sets these
-    Swap swap;
-    
-    // The Output thread swaps "swap" with "with", and then uses the
-    // with-partials while the primary thread is busy building new 
-    // partials for swap again.
+    // The Output thread's current Swap in the ring.  It emits the with-partials 
+    // while the primary thread is busy building new partials in the next Swap.
     Swap with;
         
     
     // Called by the Output Thread to check to see if new partials are
-    // waiting, and if so, to swap and use them.    
+    // waiting, and if so, to use them.    
     void checkAndSwap()
         {
-        // notice that we're effectively spin-waiting here.  
-        //while(!emitsReady)
-        //    {
-        //    Thread.currentThread().yield();
-        //    }
+        Swap next = (catchUp ? ring.pollLatest() : ring.poll(offline ? 0 : swapWaitNanos));
+        catchUp = false;
+        if (next != null)
+            {
+            with = next;
+            for(int i = 0; i < numVoices; i++)
+                packPartials(i);
+            }
+        }
+      
+    /** Returns how many partials frames the Output thread has skipped to catch up after the audio device starved. */
+    public long getFramesDropped() { return ring.getDropped(); }
+
+    /** Returns how many times the Output thread found no new partials frame and reused the previous one. */
+    public long getFramesRepeated() { return ring.getRepeated(); }
+
+    /// For each voice, the partials the engines synthesize, copied from with.partials in checkAndSwap().  
+    /// Only the first COUNT partials of a frame are heard.  For non-dephased voices these are the live 
+    /// partials, in increasing order, and the idle ones follow.  A partial is idle if it's above Nyquist 
+    /// or partialCap, or if both its target and its current amplitude are at or below MINIMUM_VOLUME, so 
+    /// it can't become audible before the next swap.  Dephased voices keep their partials in order, 
+    /// and COUNT is partialCap.
+    PartialFrame[] partials;
+    /// Only the first partialCap partials of each voice are synthesized.  This is normally all of them, 
+    /// but the Governor lowers it when we're running out of time.  It's only changed by the Output thread.
+    int partialCap = Unit.NUM_PARTIALS;
+    /// The sine quality we use in place of sinQuality, or -1 to use sinQuality.  The Governor sets this when we're
+    /// running out of time, rather than changing sinQuality, which is the user's setting and shared by every Output.  
+    /// It's only changed by the Output thread.
+    int sinQualityOverride = -1;
+
+    /** Returns the sine quality in use: normally the one in the Prefs, but the Governor may lower it. */
+    public int getSinQuality()
+        {
+        int q = sinQualityOverride;
+        return (q == -1 ? sinQuality : q);
+        }
 
-        if (emitsReady)
+    // Called by checkAndSwap().  Copies the partials of voice S from the Swap into partials[s], in
+    // double precision, moving the live ones to the front if the voice isn't dephased.  Single precision
+    // partials are widened as they're copied.  The output thread does this while the per-output threads 
+    // are waiting, so no locking is needed.
+    void packPartials(int s)
+        {
+        Swap _with = with;
+        PartialFrame frame = partials[s];
+        PartialFrame from = _with.partials[s];
+        if (_with.sleeping[s])          // its Swap partials weren't filled in, and we won't be synthesizing it
+            return;
+        if (_with.dephase[s])
+            {
+            frame.copyFrom(from);                   // this widens single precision partials as it goes
+            frame.count = partialCap;
+            return;
+            }
+            
+        byte[] orders = from.orders;
+        double[] packedAmp = frame.amplitudes;
+        double[] packedFreq = frame.frequencies;
+        byte[] packedOrders = frame.orders;
+        double[] currentAmp = currentAmplitudes[s];
+        double nyquistDividedByPitch = NYQUIST / _with.pitches[s];
+        int numLive = 0;
+        int numIdle = orders.length;
+        
+        int cap = partialCap;
+        
+        if (from.isSinglePrecision())            // this is a manual hoist
             {
-            Swap temp = swap;
-            swap = with;
-            with = temp;
-            emitsReady = false;
+            float[] amp = from.floatAmplitudes;
+            float[] freq = from.floatFrequencies;
+            for(int i = 0; i < freq.length; i++)
+                {
+                double a = amp[i];
+                double f = freq[i];
+                int j = (f <= nyquistDividedByPitch && i < cap &&
+                    (a > MINIMUM_VOLUME || currentAmp[orders[i] & 0xFF] > MINIMUM_VOLUME)) ? numLive++ : --numIdle;
+                packedAmp[j] = a;
+                packedFreq[j] = f;
+                packedOrders[j] = orders[i];
+                }
             }
         else
             {
-            //Thread.currentThread().yield();           // we don't want the output thread to yield...
+            double[] amp = from.amplitudes;
+            double[] freq = from.frequencies;
+            for(int i = 0; i < freq.length; i++)
+                {
+                int j = (freq[i] <= nyquistDividedByPitch && i < cap &&
+                    (amp[i] > MINIMUM_VOLUME || currentAmp[orders[i] & 0xFF] > MINIMUM_VOLUME)) ? numLive++ : --numIdle;
+                packedAmp[j] = amp[i];
+                packedFreq[j] = freq[i];
+                packedOrders[j] = orders[i];
+                }
             }
+        frame.count = numLive;
         }
-      
-    float[][] freeverbInput = new float[2][1];
-    float[][] freeverbOutput = new float[2][1];
+    
+    // Advances the idle partials of non-dephased voice S by LEN samples all at once, in closed form, 
+    // so that they are in the right place if they become live again.
+    void advanceIdlePartials(int s, int len)
+        {
+        Swap _with = with;
+        PartialFrame frame = partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pos = positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double tr = _with.pitches[s] * INV_SAMPLING_RATE * len;
+        double decay = Math.pow(ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, len);
+        
+        for(int i = frame.count; i < freq.length; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double amplitude = amp[i] + (currentAmp[oi] - amp[i]) * decay;
+            if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;
+            currentAmp[oi] = amplitude;
+            double position = pos[oi] + freq[i] * tr;
+            pos[oi] = position - (int) position;
+            }
+        }
+
+    // The mixed left and right channels of the current block
+    double[] mixLeft = new double[skip];
+    double[] mixRight = new double[skip];
+    float[][] freeverbInput = new float[2][skip];
+    float[][] freeverbOutput = new float[2][skip];
     FreeVerb freeverb = new FreeVerb();
+    
+    // Runs the mixed block through the reverb, in place.  The reverb is only updated if its parameters
+    // have changed since the last block.
+    void reverb(boolean stereo)
+        {
+        if (with.reverbWet != freeverb.getWet()) freeverb.setWet(with.reverbWet);
+        if (with.reverbRoomSize != freeverb.getRoomSize()) freeverb.setRoomSize(with.reverbRoomSize);
+        if (with.reverbDamp != freeverb.getDamp()) freeverb.setDamp(with.reverbDamp);
+
+        double[] mixLeft = this.mixLeft;
+        double[] mixRight = this.mixRight;
+        float[] input0 = freeverbInput[0];
+        float[] input1 = freeverbInput[1];
+        float[] output0 = freeverbOutput[0];
+        float[] output1 = freeverbOutput[1];
+        
+        // I think freeverb sounds better going in both channels and taking
+        // both channel results.  But you may have a different opinion, in
+        // which case you could feed the mono signal into one channel only.
+
+        /// freeverb freaks out with large values, so we will bound them
+        for (int samp = 0; samp < skip; samp++)
+            {
+            double left = mixLeft[samp];
+            if (left > MAX_FREEVERB_INPUT) left = MAX_FREEVERB_INPUT;    
+            else if (left < -MAX_FREEVERB_INPUT) left = -MAX_FREEVERB_INPUT;    
+            input0[samp] = (float)left;
+            }
+        if (stereo)
+            {
+            for (int samp = 0; samp < skip; samp++)
+                {
+                double right = mixRight[samp];
+                if (right > MAX_FREEVERB_INPUT) right = MAX_FREEVERB_INPUT;    
+                else if (right < -MAX_FREEVERB_INPUT) right = -MAX_FREEVERB_INPUT;    
+                input1[samp] = (float)right;
+                }
+            }
+        else
+            {
+            System.arraycopy(input0, 0, input1, 0, skip);
+            }
+                
+        freeverb.compute(skip, freeverbInput, freeverbOutput);
+        
+        if (stereo)
+            {
+            for (int samp = 0; samp < skip; samp++)
+                {
+                mixLeft[samp] = output0[samp];
+                mixRight[samp] = output1[samp];
+                }
+            }
+        else
+            {
+            for (int samp = 0; samp < skip; samp++)
+                {
+                mixLeft[samp] = (output0[samp] + output1[samp]) * 0.5;
+                }
+            }
+        }
 
     /// Current positions of the sine wave functions (from 0 ... 2PI)
     double[][] positions;
     static final double[] blankPositions = new double[Unit.NUM_PARTIALS];  // for zeroing out
 
+    // Zeroes the phases of VOICE.  Only the thread building VOICE may call this: Sounds ask for it
+    // with Sound.resetPartialPhases(), and buildVoice() does it when it picks up their next Swap.
     void resetPositions(int voice)
         {
         System.arraycopy(blankPositions, 0, positions[voice], 0, blankPositions.length);
+        Arrays.fill(phasorCos[voice], 1.0);
+        System.arraycopy(blankPositions, 0, phasorSin[voice], 0, blankPositions.length);
+        }
+
+    /// For SIN_QUALITY_RECURSIVE.  The current phasor of each partial, that is, the cosine and sine of
+    /// its position * 2 PI.  Like positions, these are indexed by ORDER.
+    double[][] phasorCos;
+    double[][] phasorSin;
+    /// For SIN_QUALITY_RECURSIVE.  The per-sample rotation for each partial, also indexed by ORDER, 
+    /// and the phase increment it was computed for, so we only call cos and sin when the increment changes.
+    double[][] rotationCos;
+    double[][] rotationSin;
+    double[][] rotationIncrements;
+    /// For SIN_QUALITY_RECURSIVE.  The rotation of each idle partial over a whole block, and the phase increment
+    /// over the block it was computed for.  See advanceIdlePhasors()
+    double[][] blockRotationCos;
+    double[][] blockRotationSin;
+    double[][] blockRotationIncrements;
+    
+    // Called at the start of each block for SIN_QUALITY_RECURSIVE.  Recomputes the rotations
+    // of any partials whose frequency or pitch has changed, and renormalizes the phasors so that 
+    // round-off doesn't make them grow or decay over time.
+    void updateRotations(int s)
+        {
+        Swap _with = with;
+        double[] freq = partials[s].frequencies;
+        byte[] orders = partials[s].orders;
+        double tr = _with.pitches[s] * INV_SAMPLING_RATE;
+        double[] rc = rotationCos[s];
+        double[] rs = rotationSin[s];
+        double[] ri = rotationIncrements[s];
+        double[] pc = phasorCos[s];
+        double[] ps = phasorSin[s];
+
+        for(int i = 0; i < freq.length; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double increment = freq[i] * tr;
+            if (increment != ri[oi])
+                {
+                ri[oi] = increment;
+                rc[oi] = Math.cos(increment * PI2);
+                rs[oi] = Math.sin(increment * PI2);
+                }
+                
+            // One Newton step toward 1/sqrt(c^2 + s^2) is plenty, since we're always very close to 1
+            double c = pc[oi];
+            double sn = ps[oi];
+            double g = 1.5 - 0.5 * (c * c + sn * sn);
+            pc[oi] = c * g;
+            ps[oi] = sn * g;
+            }
+        }
+
+    // The SIN_QUALITY_RECURSIVE version of advanceIdlePartials().  Rotates the phasors of the idle partials 
+    // of non-dephased voice S by LEN samples all at once.  Call this after updateRotations().
+    void advanceIdlePhasors(int s, int len)
+        {
+        Swap _with = with;
+        PartialFrame frame = partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pc = phasorCos[s];
+        double[] ps = phasorSin[s];
+        double[] bc = blockRotationCos[s];
+        double[] bs = blockRotationSin[s];
+        double[] bi = blockRotationIncrements[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double tr = _with.pitches[s] * INV_SAMPLING_RATE * len;
+        double decay = Math.pow(ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, len);
+        
+        for(int i = frame.count; i < freq.length; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double amplitude = amp[i] + (currentAmp[oi] - amp[i]) * decay;
+            if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;
+            currentAmp[oi] = amplitude;
+            
+            double increment = freq[i] * tr;
+            if (increment != bi[oi])
+                {
+                bi[oi] = increment;
+                bc[oi] = Math.cos(increment * PI2);
+                bs[oi] = Math.sin(increment * PI2);
+                }
+            double c = pc[oi];
+            double sn = ps[oi];
+            pc[oi] = c * bc[oi] - sn * bs[oi];
+            ps[oi] = sn * bc[oi] + c * bs[oi];
+            }
+        }
+
+    // The SIN_QUALITY_RECURSIVE version of buildSample(), called by it.
+    // Rather than advancing a position and taking its sine, we rotate a phasor.
+    double buildRecursiveSample(int s, double[][] currentAmplitudes)
+        {
+        double sample = 0;
+        Swap _with = with;
+        PartialFrame frame = partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        int count = frame.count;
+        double[] pc = phasorCos[s];
+        double[] ps = phasorSin[s];
+        double[] rc = rotationCos[s];
+        double[] rs = rotationSin[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double v = _with.velocities[s];
+        double nyquistDividedByPitch = NYQUIST / _with.pitches[s];
+        
+        if (_with.dephase[s])
+            {
+            double[] mixingCos = MIXING_COS;
+            double[] mixingSin = MIXING_SIN;
+            
+            for (int i = 0; i < count; i++)
+                {
+                double frequency = freq[i];
+                if (frequency > nyquistDividedByPitch)
+                    {
+                    break;
+                    }
+
+                int oi = orders[i] & 0xFF;
+                double amplitude = (currentAmp[oi] * ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA) +
+                    (amp[i] * PARTIALS_INTERPOLATION_ALPHA);
+                if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;          // undenormalize prior to next go-around
+                currentAmp[oi] = amplitude;
+
+                if (amplitude > MINIMUM_VOLUME)
+                    {
+                    double c = pc[oi];
+                    double sn = ps[oi];
+                    double cr = rc[oi];
+                    double sr = rs[oi];
+                    c = c * cr - sn * sr;
+                    sn = sn * cr + pc[oi] * sr;
+                    pc[oi] = c;
+                    ps[oi] = sn;
+                    
+                    // sin(a + b) = sin a cos b + cos a sin b
+                    sample += (sn * mixingCos[oi] + c * mixingSin[oi]) * amplitude;
+                    }
+                }
+            }
+        else
+            {
+            // As in buildSample(), only the live partials, which come first, are rotated here.  The idle 
+            // ones are rotated once per block in advanceIdlePhasors().
+            for (int i = 0; i < count; i++)
+                {
+                int oi = orders[i] & 0xFF;
+                double amplitude = (currentAmp[oi] * ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA) +
+                    (amp[i] * PARTIALS_INTERPOLATION_ALPHA);
+                if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;          // undenormalize prior to next go-around
+                currentAmp[oi] = amplitude;
+                
+                double c = pc[oi];
+                double sn = ps[oi];
+                double cr = rc[oi];
+                double sr = rs[oi];
+                c = c * cr - sn * sr;
+                sn = sn * cr + pc[oi] * sr;
+                pc[oi] = c;
+                ps[oi] = sn;
+
+                if (amplitude > MINIMUM_VOLUME)
+                    {
+                    sample += sn * amplitude;
+                    }
+                }
+            }
+
+        return sample * v;
         }
 
 
@@ -608,25 +1341,30 @@ public class Output
     // factor (from 0...1) 
     double buildSample(int s, double[][] currentAmplitudes)
         {        
+        int sinQuality = getSinQuality();
+        if (sinQuality == SIN_QUALITY_RECURSIVE)
+            return buildRecursiveSample(s, currentAmplitudes);
+            
         // build the sample
         double sample = 0;
         Swap _with = with;
-        double[] amp = _with.amplitudes[s];
-        double[] freq = _with.frequencies[s];
-        byte[] orders = _with.orders[s];
+        PartialFrame frame = partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        int count = frame.count;
         double[] pos = positions[s];
         double[] currentAmp = currentAmplitudes[s];
         double v = _with.velocities[s];
         double pitch = _with.pitches[s];
         double tr = pitch * INV_SAMPLING_RATE;
-        int sinQuality = this.sinQuality;
         double nyquistDividedByPitch = NYQUIST / pitch;
         
         if (_with.dephase[s])                    // this is a manual hoist
             {
             double[] mixing = MIXING;
             
-            for (int i = 0; i < pos.length; i++)
+            for (int i = 0; i < count; i++)
                 {
                 double frequency = freq[i];
                                                                 
@@ -679,7 +1417,8 @@ public class Output
             }
         else
             {
-            for (int i = 0; i < pos.length; i++)
+            // Only the live partials, which come first, can be heard.  The idle ones are advanced once per block in advanceIdlePartials().
+            for (int i = 0; i < count; i++)
                 {
                 double frequency = freq[i];
                 int oi = orders[i] & 0xFF;           // if we're using 256 partials, they need to be all positive
@@ -694,7 +1433,8 @@ public class Output
                 if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;          // undenormalize prior to next go-around
                 currentAmp[oi] = amplitude;
                                 
-                // Unlike the dephase situation, we MUST update the position for all partials            
+                // Unlike the dephase situation, we MUST update the position for all partials, 
+                // though the idle ones are done in bulk elsewhere
                 
                 double position = pos[oi] + frequency * tr;
                 position = position - (int) position;                   // fun fact. this is 9 times faster than position = position % 1.0
@@ -744,41 +1484,140 @@ public class Output
 
 
 
-    // Locks for negotiating between the primary output thread and the per-output threads
-    // These are managed via blockOutputUntil() and signalOutput()
-    Object[] outputLocks;
-    boolean[] lightweightOutputSemaphores;
-        
+    // Runs buildSamples() for each voice on the per-output threads
+    Scheduler outputScheduler;
 
-    //// When the semaphore is FALSE, the per-output thread is in charge of its Sound.
-    //// When the semaphore is TRUE, the primary output thread is in charge.
-    ////
-    //// The primary output thread signals TRUE, then blocks until FALSE.
-    //// The reverse is true for the per-output threads.
+
+
+    double samples[][] = new double[0][skip];
+
+    /// The last amplitudes (used for interpolation between the past partials and new ones)
+    /// Note that these are indexed by ORDER, not by actual index position
+    double[][] currentAmplitudes;
     
-    void blockOutputUntil(int output, boolean val)
+    /** An alternative engine for converting a voice's partials into a block of samples.
+        It must produce the same result, more or less, as calling buildSample() once per sample.  */
+    interface Oscillators
+        {
+        /** Fills SAMPLES with the next samples.length samples for voice S, multiplied by DEFAULT_VOLUME_MULTIPLIER. */
+        public void buildSamples(int s, double[] samples);
+        /** Returns a name for the engine, for display. */
+        public String getName();
+        }
+    
+    // The alternative engine, or null if we're using buildSample()
+    Oscillators oscillators;
+
+    /** Returns the name of the synthesis engine in use. */
+    public String getEngineName() { return oscillators == null ? "Scalar" : oscillators.getName(); }
+
+    // Builds the Oscillators for the current engine, or returns null for the standard engine.
+    Oscillators loadOscillators()
         {
-        synchronized(outputLocks[output])
+        if (engine == ENGINE_BLOCK)
+            {
+            return new BlockOscillators(this);
+            }
+        else if (engine == ENGINE_SPECTRAL)
             {
-            while(lightweightOutputSemaphores[output] != val)
+            if (skip < SpectralOscillators.MINIMUM_HOP)
+                {
+                System.err.println("Output.loadOscillators() WARNING: the spectral engine needs at least " + SpectralOscillators.MINIMUM_HOP + 
+                    " samples per partials update, using the scalar engine instead.");
+                }
+            else
                 {
-                try { outputLocks[output].wait(); } catch (Exception e) { }
+                return new SpectralOscillators(this, skip, Prefs.getLastSpectralThreshold());
                 }
             }
+        else if (engine == ENGINE_VECTOR)
+            {
+            // We load the vector engine reflectively, because jdk.incubator.vector may not be available
+            try
+                {
+                return (Oscillators)(Class.forName("flow.VectorOscillators").getConstructor(Output.class).newInstance(this));
+                }
+            catch (Throwable ex)
+                {
+                System.err.println("Output.loadOscillators() WARNING: the vector engine needs --add-modules jdk.incubator.vector, using the scalar engine instead.");
+                }
+            }
+        return null;
         }
-                
-    void signalOutput(int output, boolean val)
+        
+    // Fills SAMPLES with the next samples.length samples for voice S.
+    void buildSamples(int s, double[] samples)
         {
-        synchronized(outputLocks[output])
+        if (oscillators != null)
             {
-            lightweightOutputSemaphores[output] = val;
-            outputLocks[output].notify();
+            oscillators.buildSamples(s, samples);
+            }
+        else
+            {
+            buildScalarSamples(s, samples);
             }
         }
 
+    // Fills SAMPLES with the next samples.length samples for voice S, using buildSample()
+    void buildScalarSamples(int s, double[] samples)
+        {
+        if (getSinQuality() == SIN_QUALITY_RECURSIVE)
+            {
+            updateRotations(s);
+            if (!with.dephase[s])
+                advanceIdlePhasors(s, samples.length);
+            }
+        else if (!with.dephase[s])
+            advanceIdlePartials(s, samples.length);
+        double[][] currentAmplitudes = this.currentAmplitudes;
+        for (int samp = 0; samp < samples.length; samp++)
+            {
+            samples[samp] = buildSample(s, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
+            }
+        }
+  
+    // Starts the per-output threads, which divvy up the buildSample() calls among themselves.
+    // Called from the output thread, or directly from the constructor if we're offline.
+    void startPerOutputThreads()
+        {
+        outputScheduler = new Scheduler("Output", numVoices, numOutputsPerThread, handoffSpins, new Scheduler.Task()
+            {
+            public void run(int j)
+                {
+                if (j < samples.length)         // voice hasn't been loaded yet, hang tight
+                    {
+                    buildVoice(j);
+                    }
+                }
+            });
+        }
 
-
-    double samples[][] = new double[0][skip];
+    // Builds the next block of samples for voice J, or silence if it's asleep
+    void buildVoice(int j)
+        {
+        Events.BuildBlock event = (Events.BUILD_BLOCK.isEnabled() ? new Events.BuildBlock() : null);
+        if (event != null) event.begin();
+        if (with.reset[j])
+            {
+            resetPositions(j);
+            with.reset[j] = false;
+            }
+        if (with.sleeping[j])
+            {
+            Arrays.fill(samples[j], 0);
+            Arrays.fill(currentAmplitudes[j], 0);           // so we start from silence when we wake
+            }
+        else
+            {
+            buildSamples(j, samples[j]);
+            }
+        if (event != null)
+            {
+            event.voice = j;
+            event.asleep = with.sleeping[j];
+            event.commit();
+            }
+        }
 
     // Starts the output thread.  Called from the constructor.
     void startOutputThread()
@@ -787,274 +1626,240 @@ public class Output
             {
             public void run()
                 {                
-                /// The last amplitudes (used for interpolation between the past partials and new ones)
-                /// Note that these are indexed by ORDER, not by actual index position
-                final double[][] currentAmplitudes = new double[numVoices][Unit.NUM_PARTIALS];
-  
-                lightweightOutputSemaphores = new boolean[numVoices];
-                outputLocks = new Object[numVoices];
-                for (int i = 0; i < numVoices; i++) 
-                    {
-                    outputLocks[i] = new Object[0];
-                    lightweightOutputSemaphores[i] = true;
-                    }
-
-                for(int i = 0; i < numVoices; i += numOutputsPerThread)
-                    {
-                    final int _i = i;
-                    Thread thread = new Thread(new Runnable()
-                        {
-                        public void run()
-                            {
-                            while(true) 
-                                {
-                                blockOutputUntil(_i, true); 
-                                
-                                if (with.reset[_i])
-                                    {
-                                    resetPositions(_i);
-                                    with.reset[_i] = false;
-                                    }
-
-                                int n = numVoices;
-                                if (n >  _i + numOutputsPerThread)
-                                    n =  _i + numOutputsPerThread;
-                                        
-                                for(int j = _i; j < n; j++)
-                                    {
-                                    if (j < samples.length)         // voice hasn't been loaded yet, hang tight
-                                        {
-                                        double[] samplessnd = samples[j];
-                                        for (int samp = 0; samp < skip; samp++)
-                                            {
-                                            samplessnd[samp] = buildSample(j, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
-                                            }
-                                        }
-                                    }
-                                                        
-                                signalOutput(_i, false);
-                                }
-                            }
-                        });
-                    thread.setName("Output " + _i);
-                    thread.setDaemon(true);
-                    thread.start();
-                    }
-            
-                boolean stereo = Output.isStereo();
-                                
+                startPerOutputThreads();
+                long blockNanos = (long)(skip * 1000000000.0 / SAMPLING_RATE);
+                long deadline = 0;
+                            
                 while(true)
                     {
-                    if (numSounds == 0) // nothing allocated yet
+                    updateAudioSink();
+                    AudioSink s = sink;
+                    if (numSounds == 0 || s == null) // nothing allocated yet
                         { 
                         try { Thread.currentThread().sleep(25); } catch (InterruptedException ex) { }
                         continue;
                         }
                     
-                    int solo = -1;
-                    
-                    int available = sdl.available();
-                    if (available >= ((bufferSize - 128) * (stereo ? 2 : 1)))
+                    boolean starved = s.isStarved();
+                    if (starved)
                         {
                         glitched = true;
+                        catchUp = true;
+                        metrics.underrun();
                         }
-                        
-                    if (samples.length != numSounds)
+                    metrics.updateQueued(s);
+                    
+                    Events.OutputBlock event = (Events.OUTPUT_BLOCK.isEnabled() ? new Events.OutputBlock() : null);
+                    if (event != null) event.begin();
+                    renderBlock();
+                    if (event != null)
                         {
-                        samples = new double[numSounds][skip];
+                        event.starved = starved;
+                        event.commit();
                         }
-                        
-                    checkAndSwap();
+                    if (governor != null)
+                        governor.update(renderNanos, voiceNanos, starved);
                     
-                    if (onlyPlayFirstSound)
+                    try
                         {
-                        Sound sound = input.getLastPlayedSound();
-                        if (sound == null)
-                            solo = 0;
-                        else
-                            solo = sound.getIndex();
-                        
-                        if (with.reset[solo])
-                            {
-                            resetPositions(solo);
-                            with.reset[solo] = false;
-                            }
-                                                        
-                        double[] samplessnd = samples[solo];
-                        for (int samp = 0; samp < skip; samp++)
-                            {
-                            samplessnd[samp] = buildSample(solo, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
-                            }
+                        s.write(audioBuffer, 0, audioBuffer.length);
+                        }
+                    catch (IOException ex)
+                        {
+                        System.err.println("Output.startOutputThread() WARNING: couldn't write to the audio sink, discarding audio from now on: " + ex);
+                        swapAudioSink(new AudioSink.Null(isStereo() ? 2 : 1));
+                        }
+                    
+                    if (s.isRealTime())
+                        {
+                        deadline = 0;
                         }
                     else
                         {
-                        // Fire up output threads
-                        for(int snd = 0; snd < numSounds; snd += numOutputsPerThread)
-                            {
-                            signalOutput(snd, true);
-                            }
-                        for(int snd = 0; snd < numSounds; snd += numOutputsPerThread)
-                            {
-                            blockOutputUntil(snd, false);
-                            }
+                        // Nothing else is pacing us, so wait until the block would have been played.  Otherwise we'd 
+                        // render as fast as we can, mostly over and over from the same partials.
+                        long now = System.nanoTime();
+                        if (deadline == 0 || now - deadline > blockNanos * 8)          // just started, or far behind
+                            deadline = now;
+                        deadline += blockNanos;
+                        if (deadline > now)
+                            java.util.concurrent.locks.LockSupport.parkNanos(deadline - now);
                         }
+                    }
+                }
+            });
+        
+        outputThread = thread;
+        thread.setName("Sound Output");
+        thread.setDaemon(true);
+        thread.start();
+        }
+
+    /** Returns the number of samples per channel produced by each call to renderBlock(). */
+    public static int getSkip() { return skip; }
+        
+    /** Returns the audio buffer filled by renderBlock(), as 16-bit signed little-endian PCM,
+        interleaved left and right if we're in stereo.  This is what's written to the AudioSink.  */
+    public byte[] getAudioBuffer() { return audioBuffer; }
+
+    /** Grabs the latest partials, if any, from the primary voice thread and converts them into
+        the next SKIP samples, which are mixed, reverbed, and stored as 16-bit PCM in the audio buffer.
+        This is normally called repeatedly by the Sound Output thread, but if the Output is offline,
+        you call it yourself, typically right after calling go().  It does nothing if there are no Sounds yet. */
+    public void renderBlock()
+        {
+        if (numSounds == 0) // nothing allocated yet
+            return;
+                                
+        boolean stereo = Output.isStereo();
+        int solo = -1;
+                    
+        if (samples.length != numSounds)
+            {
+            samples = new double[numSounds][skip];
+            }
                         
-                    if (with.reverbWet > 0.0f)
-                        {        
-                        freeverb.setWet(with.reverbWet);
-                        freeverb.setRoomSize(with.reverbRoomSize);
-                        freeverb.setDamp(with.reverbDamp);
-                        }
+        checkAndSwap();
+        long start = System.nanoTime();
+                    
+        if (onlyPlayFirstSound)
+            {
+            Sound sound = input.getLastPlayedSound();
+            if (sound == null)
+                solo = 0;
+            else
+                solo = sound.getIndex();
                         
-                    double gain = masterGain;           // so we're not reading a volatile variable!
-                                 
-                    int j = 0;       
-                    for (int samp = 0; samp < skip; samp++)
+            buildVoice(solo);
+            }
+        else
+            {
+            // Fire up output threads
+            outputScheduler.run(numSounds);
+            }
+                        
+        // Mix the voices
+        double[] mixLeft = this.mixLeft;
+        double[] mixRight = this.mixRight;
+        for (int samp = 0; samp < skip; samp++)
+            {
+            double left = 0;
+            double right = 0;
+            if (solo != -1)
+                {
+                if (stereo)
+                    {
+                    left += samples[solo][samp] * (1.0 - with.pan[solo]);
+                    right += samples[solo][samp] * with.pan[solo];
+                    }
+                else
+                    {
+                    left += samples[solo][samp];
+                    }
+                }
+            else
+                {
+                if (stereo)
+                    {
+                    for(int snd = 0; snd < samples.length; snd++)
                         {
-                        double left = 0;
-                        double right = 0;
-                        if (solo != -1)
-                            {
-                            if (stereo)
-                                {
-                                left += samples[solo][samp] * (1.0 - with.pan[solo]);
-                                right += samples[solo][samp] * with.pan[solo];
-                                }
-                            else
-                                {
-                                left += samples[solo][samp];
-                                }
-                            }
-                        else
-                            {
-                            if (stereo)
-                                {
-                                for(int snd = 0; snd < samples.length; snd++)
-                                    {
-                                    left += samples[snd][samp] * (1.0 - with.pan[snd]);
-                                    right += samples[snd][samp] * with.pan[snd];
-                                    }
-                                }
-                            else
-                                {
-                                for(int snd = 0; snd < samples.length; snd++)
-                                    {
-                                    left += samples[snd][samp];
-                                    }
-                                }
-                            }
+                        left += samples[snd][samp] * (1.0 - with.pan[snd]);
+                        right += samples[snd][samp] * with.pan[snd];
+                        }
+                    }
+                else
+                    {
+                    for(int snd = 0; snd < samples.length; snd++)
+                        {
+                        left += samples[snd][samp];
+                        }
+                    }
+                }
+            mixLeft[samp] = left;
+            mixRight[samp] = right;
+            }
 
-                        // add reverb?
-                        if (with.reverbWet > 0.0f)
-                            {
-                            // I think freeverb sounds better going in both channels and taking
-                            // both channel results.  But you may have a different opinion, in
-                            // which I think you do: 
-                            //
-                            //freeverbInput[0][0] = (float)d;
-                            //freeverb.compute(1, freeverbInput, freeverbOutput);
-                            //d = freeverbOutput[0][0]; 
-                                
-                            if (stereo)
-                                {
-
-                                /// freeverb freaks out with large values, so we will bound them
-                                if (left > MAX_FREEVERB_INPUT) left = MAX_FREEVERB_INPUT;    
-                                else if (left < -MAX_FREEVERB_INPUT) left = -MAX_FREEVERB_INPUT;    
-                                if (right > MAX_FREEVERB_INPUT) right = MAX_FREEVERB_INPUT;    
-                                else if (right < -MAX_FREEVERB_INPUT) right = -MAX_FREEVERB_INPUT;    
-                            
-                                freeverbInput[0][0] = (float)left;
-                                freeverbInput[1][0] = (float)right;
-                                freeverb.compute(1, freeverbInput, freeverbOutput);
-                                left = freeverbOutput[0][0];
-                                right = freeverbOutput[1][0];
-                                }
-                            else
-                                {
-                                /// freeverb freaks out with large values, so we will bound them
-                                if (left > MAX_FREEVERB_INPUT) left = MAX_FREEVERB_INPUT;    
-                                else if (left < -MAX_FREEVERB_INPUT) left = -MAX_FREEVERB_INPUT;    
-                            
-                                freeverbInput[0][0] = (float)left;
-                                freeverbInput[1][0] = (float)left;
-                                freeverb.compute(1, freeverbInput, freeverbOutput);
-                                left = (freeverbOutput[0][0] + freeverbOutput[1][0]) * 0.5;
-                                }
-                            }
-                                                    
+        // add reverb?
+        if (with.reverbWet > 0.0f)
+            {
+            reverb(stereo);
+            }
+                        
+        double gain = masterGain;           // so we're not reading a volatile variable!
+                                 
+        int j = 0;       
+        for (int samp = 0; samp < skip; samp++)
+            {
+            double left = mixLeft[samp];
+            double right = mixRight[samp];
 
-                        left *= gain;
+            left *= gain;
                                                             
-                        if (left > 32767)
-                            {
-                            left = 32767;
-                            clipped = true;
-                            }
-                        else if (left < -32768)
-                            {
-                            left = -32768;
-                            clipped = true;
-                            }
+            if (left > 32767)
+                {
+                left = 32767;
+                clipped = true;
+                }
+            else if (left < -32768)
+                {
+                left = -32768;
+                clipped = true;
+                }
 
-                        if (stereo)
-                            {
-                            right *= gain;
-                            if (right > 32767)
-                                {
-                                right = 32767;
-                                clipped = true;
-                                }
-                            else if (right < -32768)
-                                {
-                                right = -32768;
-                                clipped = true;
-                                }
-                            }
+            if (stereo)
+                {
+                right *= gain;
+                if (right > 32767)
+                    {
+                    right = 32767;
+                    clipped = true;
+                    }
+                else if (right < -32768)
+                    {
+                    right = -32768;
+                    clipped = true;
+                    }
+                }
                                                     
-                        if (stereo)
-                            {
-                            int val = (int)(left);
-                            audioBuffer[samp * 2 * 2 + 0] = (byte)(val & 255);
-                            audioBuffer[samp * 2 * 2 + 1] = (byte)((val >> 8) & 255);
-                            val = (int)(right);
-                            audioBuffer[samp * 2 * 2 + 2] = (byte)(val & 255);
-                            audioBuffer[samp * 2 * 2 + 3] = (byte)((val >> 8) & 255);
-                            }
-                        else
-                            {
-                            int val = (int)(left);
-                            audioBuffer[samp * 2 + 0] = (byte)(val & 255);
-                            audioBuffer[samp * 2 + 1] = (byte)((val >> 8) & 255);
-                            }
-                        j++;
-                        if (j >= 4)
-                            {
-                            leftSamples[sampleCounter] = left;
-                            if (stereo)
-                                {
-                                rightSamples[sampleCounter] = right;
-                                }
-                            else
-                                {
-                                rightSamples[sampleCounter] = left;
-                                }
-                            sampleCounter++;
-                            j = 0;
-                            }
-                        tick++;                                 /// See documentation elsewhere about threadsafe nature of tick
-                        }
-                    
-                    sdl.write(audioBuffer, 0, audioBuffer.length);
-                    if (sampleCounter >= leftSamples.length)
-                        updateOutputOscilloscope();
+            if (stereo)
+                {
+                int val = (int)(left);
+                audioBuffer[samp * 2 * 2 + 0] = (byte)(val & 255);
+                audioBuffer[samp * 2 * 2 + 1] = (byte)((val >> 8) & 255);
+                val = (int)(right);
+                audioBuffer[samp * 2 * 2 + 2] = (byte)(val & 255);
+                audioBuffer[samp * 2 * 2 + 3] = (byte)((val >> 8) & 255);
+                }
+            else
+                {
+                int val = (int)(left);
+                audioBuffer[samp * 2 + 0] = (byte)(val & 255);
+                audioBuffer[samp * 2 + 1] = (byte)((val >> 8) & 255);
+                }
+            j++;
+            if (j >= 4)
+                {
+                leftSamples[sampleCounter] = left;
+                if (stereo)
+                    {
+                    rightSamples[sampleCounter] = right;
                     }
+                else
+                    {
+                    rightSamples[sampleCounter] = left;
+                    }
+                sampleCounter++;
+                j = 0;
                 }
-            });
+            tick++;                                 /// See documentation at getTick() about threadsafe nature of tick
+            }
+        publishTick();
+                    
+        if (sampleCounter >= leftSamples.length)
+            updateOutputOscilloscope();
         
-        thread.setName("Sound Output");
-        thread.setDaemon(true);
-        thread.start();
+        renderNanos = System.nanoTime() - start;
+        metrics.outputTimes.record(renderNanos);
         }
         
     int sampleCounter = 0;
@@ -1077,45 +1882,18 @@ public class Output
 
 
     // Starts the per-voice threads.  Called from primary voice thread if it needs to.
-    void startPerVoiceThreads(int numThreads)
+    void startPerVoiceThreads()
         {
-        // build the sound threads
-        lightweightSemaphores = new boolean[numThreads];
-        voiceLocks = new Object[numThreads];
-        for (int i = 0; i < numThreads; i++) 
-            {
-            voiceLocks[i] = new Object[0];
-            lightweightSemaphores[i] = true;
-            }
-                                                
-        for (int i = 0; i < numThreads; i++)
+        voiceScheduler = new Scheduler("Voice", numVoices, numVoicesPerThread, handoffSpins, new Scheduler.Task()
             {
-            final int _i = i;
-            Thread thread = new Thread(new Runnable()
+            public void run(int voice)
                 {
-                public void run()
-                    {
-                    while(true) 
-                        {
-                        blockVoiceUntil(_i, true); 
-                        for (int j = 0; j < numVoicesPerThread; j++)
-                            {
-                            int voice = _i * numVoicesPerThread + j;
-                            if (voice >= numSounds) 
-                                break;
-                            else
-                                {
-                                sounds[voice].go(); 
-                                }
-                            }
-                        signalVoice(_i, false);
-                        }
-                    }
-                });
-            thread.setName("Voice " + _i);
-            thread.setDaemon(true);
-            thread.start();
-            }       
+                if (!asleep[voice])
+                    sounds[voice].go();
+                else
+                    sounds[voice].updatePortamento();
+                }
+            });
         }
                 
                 
@@ -1147,37 +1925,8 @@ public class Output
         }
         
         
-    //// When the semaphore is FALSE, the per-voice thread is in charge of its Sound.
-    //// When the semaphore is TRUE, the primary voice thread is in charge.
-    ////
-    //// The primary voice thread signals TRUE, then blocks until FALSE.
-    //// The reverse is true for the per-voice threads.
-    
-    void blockVoiceUntil(int thread, boolean val)
-        {
-        synchronized(voiceLocks[thread])
-            {
-            while(lightweightSemaphores[thread] != val)
-                {
-                try { voiceLocks[thread].wait(); } catch (Exception e) { }
-                }
-            }
-        }
-                
-    void signalVoice(int thread, boolean val)
-        {
-        synchronized(voiceLocks[thread])
-            {
-            lightweightSemaphores[thread] = val;
-            voiceLocks[thread].notify();
-            }
-        }
-
     volatile int count = 0;
 
-    double[] zeroAmplitudes = new double[Unit.NUM_PARTIALS];
-    double[] zeroFrequencies = new double[Unit.NUM_PARTIALS];
-    byte[] standardOrders = new byte[Unit.NUM_PARTIALS];
     
     long ttick = 0;
     
@@ -1188,6 +1937,10 @@ public class Output
         or via calling startPrimaryVoiceThread(). */ 
     public void go()
         {
+        Events.VoicePass event = (Events.VOICE_PASS.isEnabled() ? new Events.VoicePass() : null);
+        if (event != null) event.begin();
+        long start = System.nanoTime();
+        
         // reduce the number of sounds to 1 if monophonic
         int ns = numSounds;
         if (onlyPlayFirstSound) ns = 1;
@@ -1198,40 +1951,49 @@ public class Output
         lock();
         try
             {
+            int steal = voicesToSteal.getAndSet(0);
+            if (steal > 0)
+                stealVoices(steal, ns);
+                
             if (!soundThreadsStarted)
                 for (int i = 0; i < ns; i++)
                     {
                     sounds[i].reset();
                     }
+                    
+            // Update the elements each group shares, once, in the group's first Sound
+            for (int i = 0; i < ns; i++)
+                {
+                Sound sound = sounds[i];
+                int g = sound.getGroup();
+                if (groupLeaders[g] == null)
+                    {
+                    groupLeaders[g] = sound;
+                    sound.goShared();
+                    }
+                else sound.setLeader(groupLeaders[g]);
+                }
+            Arrays.fill(groupLeaders, null);
+            
             if (ns <= numVoicesPerThread)
                 {                
                 for (int i = 0; i < ns; i++)
                     {
-                    sounds[i].go();
+                    if (!asleep[i])
+                        sounds[i].go();
+                    else
+                        sounds[i].updatePortamento();           // so the next note glides from the same place
                     }
                 soundThreadsStarted = true;
                 }
             else
                 {
-                int numThreads = (int)(Math.ceil(ns / (double)numVoicesPerThread));
-                if (voiceLocks == null)
+                if (voiceScheduler == null)
                     {
-                    startPerVoiceThreads(numThreads);
-
-                    for (int i = 0; i < numThreads; i++)
-                        {
-                        blockVoiceUntil(i, false);
-                        }
+                    startPerVoiceThreads();
                     }
 
-                for (int i = 0; i < numThreads; i++)
-                    {
-                    signalVoice(i, true);
-                    }
-                for (int i = 0; i < numThreads; i++)
-                    {
-                    blockVoiceUntil(i, false);
-                    }
+                voiceScheduler.run(ns);
                 soundThreadsStarted = true;
                 }
             }
@@ -1240,11 +2002,10 @@ public class Output
             unlock();
             }
 
-        // Spin-wait.  It's both faster and more efficient than a mutex in this case, but it eats up cycles
-        while(emitsReady)
-            {
-            //Thread.currentThread().yield();
-            }
+        // Wait for room in the ring.  This doesn't count as time spent in go().
+        long wait = System.nanoTime();
+        Swap swap = ring.acquire();
+        start += System.nanoTime() - wait;
                 
         lock();
         try
@@ -1254,19 +2015,22 @@ public class Output
                 {
                 swap.reset[i] = sounds[i].requestReset;
                 sounds[i].requestReset = false;
+                if (asleep[i])
+                    {
+                    swap.sleeping[i] = true;
+                    continue;
+                    }
                 Unit emits = sounds[i].getEmits();
+                PartialFrame frame = swap.partials[i];
                 if (emits != null)
                     {
-                    System.arraycopy(emits.amplitudes[0], 0, swap.amplitudes[i], 0, emits.amplitudes[0].length); 
-                    undenormalize(swap.amplitudes[i]);
-                    System.arraycopy(emits.frequencies[0], 0, swap.frequencies[i], 0, emits.frequencies[0].length);
-                    System.arraycopy(emits.orders[0], 0, swap.orders[i], 0, emits.orders[0].length);
+                    frame.copyFrom(emits, 0);
+                    if (!frame.isSinglePrecision())             // floats can't hold anything as small as WELL_ABOVE_SUBNORMALS
+                        undenormalize(frame.amplitudes);
                     }
                 else
                     {
-                    System.arraycopy(zeroAmplitudes, 0, swap.amplitudes[i], 0, zeroAmplitudes.length); 
-                    System.arraycopy(zeroFrequencies, 0, swap.frequencies[i], 0, zeroFrequencies.length); 
-                    System.arraycopy(standardOrders, 0, swap.orders[i], 0, standardOrders.length); 
+                    frame.clear();
                     }
 
                 swap.pitches[i] = sounds[i].getPitch();
@@ -1281,6 +2045,7 @@ public class Output
                     {
                     System.err.println("Output.go() WARNING, emits isn't an Out!");
                     }
+                updateSleep(i, swap);
                 }
                 
             if (e instanceof Out)       // we're only doing this for ONE sound, namely sounds[0]
@@ -1296,7 +2061,15 @@ public class Output
             unlock();
             }
         
-        emitsReady = true;
+        ring.publish();
+        long elapsed = System.nanoTime() - start;
+        voiceNanos = elapsed;
+        metrics.voiceTimes.record(elapsed);
+        if (event != null)
+            {
+            event.voices = ns;
+            event.commit();
+            }
         }  
 
 
@@ -1314,6 +2087,8 @@ public class Output
         
     /** Maximum number of possible groups */    
     public static final int MAX_GROUPS = 32;
+    // The first Sound in each group, used while updating the Sounds
+    Sound[] groupLeaders = new Sound[MAX_GROUPS];
     /** Primary group.  This is always group 0. */
     public static final int PRIMARY_GROUP = 0;
     /** Indicates no group has been assigned */
@@ -2069,6 +2844,19 @@ public class Output
     1.75341780686486
     };
 
+    /// The cosine and sine of MIXING, for dephasing with SIN_QUALITY_RECURSIVE
+    static final double[] MIXING_COS = new double[MIXING.length];
+    static final double[] MIXING_SIN = new double[MIXING.length];
+    static
+        {
+        for(int i = 0; i < MIXING.length; i++)
+            {
+            MIXING_COS[i] = Math.cos(MIXING[i]);
+            MIXING_SIN[i] = Math.sin(MIXING[i]);
+            }
+        }
+
+
         
 
 
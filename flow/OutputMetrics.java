@@ -0,0 +1,158 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.lang.management.*;
+import javax.management.*;
+import javax.sound.sampled.*;
+
+/**
+   Performance counters for an Output: how long the voice and output sides take per block, how often
+   the audio device starves and how much audio it has queued, how many voices are asleep, and how long
+   threads wait for the Output's lock.  The counters are updated on the audio threads without allocating
+   or locking, so they're always on.
+
+   <p>If the Output is running in real time, its OutputMetrics is registered with the platform MBean server 
+   as "flow:type=Output", so you can watch it in JConsole or VisualVM.  If Prefs.getLastMetricsLogInterval()
+   is more than 0, a summary is also printed to stderr every so many seconds.
+**/
+
+public class OutputMetrics implements OutputMetricsMBean
+    {
+    public static final String OBJECT_NAME = "flow:type=Output";
+    
+    Output output;
+    Histogram voiceTimes = new Histogram();
+    Histogram outputTimes = new Histogram();
+    Histogram lockWaits = new Histogram();
+    volatile long underruns;
+    volatile int queuedFrames = -1;
+    volatile int minQueuedFrames = -1;
+    // SwapRing's drop and repeat counts when we were last reset
+    volatile long droppedBase;
+    volatile long repeatedBase;
+
+    public OutputMetrics(Output output)
+        {
+        this.output = output;
+        }
+
+    // Called by the Sound Output thread when the audio device has starved
+    void underrun() { underruns++; }
+
+    // Called by the Sound Output thread each block with the sink it's about to write to
+    void updateQueued(AudioSink sink)
+        {
+        if (sink instanceof AudioSink.Line)
+            {
+            SourceDataLine sdl = ((AudioSink.Line)sink).getLine();
+            int frames = (sdl.getBufferSize() - sdl.available()) / sdl.getFormat().getFrameSize();
+            queuedFrames = frames;
+            if (minQueuedFrames == -1 || frames < minQueuedFrames)
+                minQueuedFrames = frames;
+            }
+        }
+
+    /** Registers this OutputMetrics with the platform MBean server, replacing any other registered under
+        the same name, and if LOG_INTERVAL is more than 0, starts printing a summary every LOG_INTERVAL seconds. */
+    public void register(int logInterval)
+        {
+        try
+            {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            }
+        catch (Exception ex)
+            {
+            System.err.println("OutputMetrics.register() WARNING: couldn't register with JMX: " + ex);
+            }
+
+        if (logInterval > 0)
+            {
+            final long interval = logInterval * 1000L;
+            Thread thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    while(true)
+                        {
+                        try { Thread.sleep(interval); } catch (InterruptedException ex) { return; }
+                        System.err.println("Output metrics: " + getSummary());
+                        }
+                    }
+                });
+            thread.setName("Output Metrics");
+            thread.setDaemon(true);
+            thread.start();
+            }
+        }
+
+    public long getVoiceBlocks() { return voiceTimes.getCount(); }
+    public double getVoiceMeanMicros() { return voiceTimes.getMeanMicros(); }
+    public long getVoiceP50Micros() { return voiceTimes.getPercentileMicros(0.50); }
+    public long getVoiceP99Micros() { return voiceTimes.getPercentileMicros(0.99); }
+    public double getVoiceMaxMicros() { return voiceTimes.getMaxMicros(); }
+
+    public long getOutputBlocks() { return outputTimes.getCount(); }
+    public double getOutputMeanMicros() { return outputTimes.getMeanMicros(); }
+    public long getOutputP50Micros() { return outputTimes.getPercentileMicros(0.50); }
+    public long getOutputP99Micros() { return outputTimes.getPercentileMicros(0.99); }
+    public double getOutputMaxMicros() { return outputTimes.getMaxMicros(); }
+
+    public long getUnderruns() { return underruns; }
+    public long getFramesDropped() { return output.getFramesDropped() - droppedBase; }
+    public long getFramesRepeated() { return output.getFramesRepeated() - repeatedBase; }
+    public int getQueuedFrames() { return queuedFrames; }
+    public int getMinQueuedFrames() { return minQueuedFrames; }
+
+    public int getVoices() { return output.getNumSounds(); }
+    public int getActiveVoices() { return getVoices() - getSleepingVoices(); }
+    public int getSleepingVoices()
+        {
+        int n = output.getNumSounds();
+        boolean[] asleep = output.asleep;           // we don't lock, this is just for display
+        int count = 0;
+        for(int i = 0; i < n; i++)
+            if (asleep[i]) count++;
+        return count;
+        }
+
+    public long getLockWaits() { return lockWaits.getCount(); }
+    public double getLockWaitMeanMicros() { return lockWaits.getMeanMicros(); }
+    public long getLockWaitP99Micros() { return lockWaits.getPercentileMicros(0.99); }
+    public double getLockWaitMaxMicros() { return lockWaits.getMaxMicros(); }
+    public double getLockWaitTotalMillis() { return lockWaits.getTotal() / 1000000.0; }
+
+    public String getGovernor()
+        {
+        String g = output.getGovernorDescription();
+        return (g == null ? "Off" : g);
+        }
+
+    public String getSummary()
+        {
+        return "voice " + (int)getVoiceMeanMicros() + "us mean " + getVoiceP99Micros() + "us p99 " + (int)getVoiceMaxMicros() + "us max" + 
+            ", output " + (int)getOutputMeanMicros() + "us mean " + getOutputP99Micros() + "us p99 " + (int)getOutputMaxMicros() + "us max" + 
+            ", underruns " + getUnderruns() + ", dropped " + getFramesDropped() + ", repeated " + getFramesRepeated() + 
+            ", queued " + getQueuedFrames() + " (min " + getMinQueuedFrames() + ")" +
+            ", voices " + getActiveVoices() + " active " + getSleepingVoices() + " asleep" + 
+            ", lock waits " + getLockWaits() + " (" + (int)getLockWaitMeanMicros() + "us mean " + (int)getLockWaitMaxMicros() + "us max)" +
+            ", governor " + getGovernor();
+        }
+
+    public void reset()
+        {
+        voiceTimes.reset();
+        outputTimes.reset();
+        lockWaits.reset();
+        underruns = 0;
+        minQueuedFrames = queuedFrames;
+        droppedBase = output.getFramesDropped();
+        repeatedBase = output.getFramesRepeated();
+        }
+    }
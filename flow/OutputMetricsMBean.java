@@ -0,0 +1,60 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   The management interface of OutputMetrics, which is how the Output's performance counters
+   are shown in JConsole, VisualVM, and other JMX clients.  Times are in microseconds unless
+   otherwise stated.  Percentiles are upper bounds of power-of-two buckets.
+**/
+
+public interface OutputMetricsMBean
+    {
+    /** Number of blocks the primary voice thread has computed in go() */
+    public long getVoiceBlocks();
+    public double getVoiceMeanMicros();
+    public long getVoiceP50Micros();
+    public long getVoiceP99Micros();
+    public double getVoiceMaxMicros();
+
+    /** Number of blocks the Sound Output thread has rendered in renderBlock() */
+    public long getOutputBlocks();
+    public double getOutputMeanMicros();
+    public long getOutputP50Micros();
+    public long getOutputP99Micros();
+    public double getOutputMaxMicros();
+
+    /** Number of times the audio device was found starved */
+    public long getUnderruns();
+    /** Number of frames the Sound Output thread skipped to catch up */
+    public long getFramesDropped();
+    /** Number of times the Sound Output thread reused a frame because no new one had arrived */
+    public long getFramesRepeated();
+    /** Audio frames queued in the audio device at the last block, or -1 if there is no audio device */
+    public int getQueuedFrames();
+    /** Fewest audio frames queued in the audio device at any block, or -1 if there is no audio device */
+    public int getMinQueuedFrames();
+
+    public int getVoices();
+    public int getActiveVoices();
+    public int getSleepingVoices();
+
+    /** Number of calls to Output.lock() which found the lock held and had to wait.  The lock wait times are over these calls only. */
+    public long getLockWaits();
+    public double getLockWaitMeanMicros();
+    public long getLockWaitP99Micros();
+    public double getLockWaitMaxMicros();
+    /** Total time spent waiting in Output.lock(), in milliseconds */
+    public double getLockWaitTotalMillis();
+
+    /** What the Governor is doing, or "Off" */
+    public String getGovernor();
+    
+    /** Returns all of the above on one line */
+    public String getSummary();
+
+    /** Clears the histograms and counters */
+    public void reset();
+    }
@@ -0,0 +1,383 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   One set of partials: their frequencies, amplitudes, and orders, stored as three parallel arrays
+   which are allocated once and reused.  Each Unit output port is a PartialFrame, as is each voice
+   in Output.
+
+   <p>A frame's arrays are public, and two frames may hold the same array: this is how a Unit pushes
+   an input's partials to an output without copying them.  COUNT is the number of partials in use,
+   which come first.  Units use all of them; Output moves the partials it will synthesize to the front 
+   of each voice's frame and counts them, so its engines can skip the rest.
+
+   <p>A frame may instead be SINGLE PRECISION, in which case its frequencies and amplitudes are kept in
+   floatFrequencies and floatAmplitudes, and frequencies and amplitudes are null.  Output uses these
+   to hand partials from the voice threads to the Output thread in half the memory when 
+   Prefs.getLastSinglePrecision() is set.  The copyFrom(...) methods convert between the two.
+
+   <p>The static sorting methods work on any three parallel arrays, and are what Unit uses to sort its
+   outputs.  They sort by frequency, carrying the amplitudes and orders along with their frequencies.
+**/
+
+public class PartialFrame
+    {
+    /** The frequencies of the partials, relative to the pitch, or null if the frame is single precision */
+    public double[] frequencies;
+    /** The amplitudes of the partials, or null if the frame is single precision */
+    public double[] amplitudes;
+    /** The frequencies of the partials if the frame is single precision, else null */
+    public float[] floatFrequencies;
+    /** The amplitudes of the partials if the frame is single precision, else null */
+    public float[] floatAmplitudes;
+    /** The orders of the partials */
+    public byte[] orders;
+    /** The number of partials in use, which are the first COUNT partials in the arrays */
+    public int count;
+
+    /** Builds a frame of Unit.NUM_PARTIALS silent partials. */
+    public PartialFrame()
+        {
+        this(Unit.NUM_PARTIALS);
+        }
+
+    /** Builds a frame of CAPACITY silent partials. */
+    public PartialFrame(int capacity)
+        {
+        this(capacity, false);
+        }
+
+    /** Builds a frame of CAPACITY silent partials, in single precision if SINGLEPRECISION is true. */
+    public PartialFrame(int capacity, boolean singlePrecision)
+        {
+        if (singlePrecision)
+            {
+            floatFrequencies = new float[capacity];
+            floatAmplitudes = new float[capacity];
+            }
+        else
+            {
+            frequencies = new double[capacity];
+            amplitudes = new double[capacity];
+            }
+        orders = new byte[capacity];
+        clear();
+        }
+
+    /** Builds a frame which holds the given arrays, without copying them, and uses all of their partials. */
+    public PartialFrame(double[] frequencies, double[] amplitudes, byte[] orders)
+        {
+        this.frequencies = frequencies;
+        this.amplitudes = amplitudes;
+        this.orders = orders;
+        count = frequencies.length;
+        }
+
+    /** Returns the number of partials in the frame. */
+    public int getCapacity() { return orders.length; }
+
+    /** Returns true if the frame keeps its frequencies and amplitudes as floats. */
+    public boolean isSinglePrecision() { return frequencies == null; }
+
+    /** Sets all the partials to zero frequency and amplitude, in standard order, and uses all of them. */
+    public void clear()
+        {
+        count = orders.length;
+        if (isSinglePrecision())
+            {
+            for(int i = 0; i < orders.length; i++)
+                {
+                floatFrequencies[i] = 0;
+                floatAmplitudes[i] = 0;
+                }
+            }
+        else
+            {
+            for(int i = 0; i < orders.length; i++)
+                {
+                frequencies[i] = 0;
+                amplitudes[i] = 0;
+                }
+            }
+        for(int i = 0; i < orders.length; i++)
+            orders[i] = (byte)i;
+        }
+
+    /** Sets the amplitudes of all the partials to zero, leaving their frequencies and orders alone. */
+    public void silence()
+        {
+        if (isSinglePrecision())
+            {
+            for(int i = 0; i < floatAmplitudes.length; i++)
+                floatAmplitudes[i] = 0;
+            }
+        else
+            {
+            for(int i = 0; i < amplitudes.length; i++)
+                amplitudes[i] = 0;
+            }
+        }
+
+    /** Returns the sum of the amplitudes of all the partials. */
+    public double getTotalAmplitude()
+        {
+        double total = 0;
+        if (isSinglePrecision())
+            {
+            for(int i = 0; i < floatAmplitudes.length; i++)
+                total += floatAmplitudes[i];
+            }
+        else
+            {
+            for(int i = 0; i < amplitudes.length; i++)
+                total += amplitudes[i];
+            }
+        return total;
+        }
+
+    /** Copies the given partials, which must be as many as the frame's capacity, and uses all of them. */
+    public void copyFrom(double[] frequencies, double[] amplitudes, byte[] orders)
+        {
+        if (isSinglePrecision())
+            {
+            float[] f = floatFrequencies;
+            float[] a = floatAmplitudes;
+            for(int i = 0; i < f.length; i++)
+                {
+                f[i] = (float)frequencies[i];
+                a[i] = (float)amplitudes[i];
+                }
+            }
+        else
+            {
+            System.arraycopy(frequencies, 0, this.frequencies, 0, this.frequencies.length);
+            System.arraycopy(amplitudes, 0, this.amplitudes, 0, this.amplitudes.length);
+            }
+        System.arraycopy(orders, 0, this.orders, 0, this.orders.length);
+        count = this.orders.length;
+        }
+
+    /** Copies the partials of the given output of the given Unit. */
+    public void copyFrom(Unit unit, int output)
+        {
+        copyFrom(unit.getPartials(output));
+        }
+
+    /** Copies the partials of another frame, which must have the same capacity, and its count.
+        Either frame may be single precision. */
+    public void copyFrom(PartialFrame other)
+        {
+        if (!other.isSinglePrecision())
+            {
+            copyFrom(other.frequencies, other.amplitudes, other.orders);
+            }
+        else if (isSinglePrecision())
+            {
+            System.arraycopy(other.floatFrequencies, 0, floatFrequencies, 0, floatFrequencies.length);
+            System.arraycopy(other.floatAmplitudes, 0, floatAmplitudes, 0, floatAmplitudes.length);
+            System.arraycopy(other.orders, 0, orders, 0, orders.length);
+            }
+        else
+            {
+            float[] f = other.floatFrequencies;
+            float[] a = other.floatAmplitudes;
+            for(int i = 0; i < frequencies.length; i++)
+                {
+                frequencies[i] = f[i];
+                amplitudes[i] = a[i];
+                }
+            System.arraycopy(other.orders, 0, orders, 0, orders.length);
+            }
+        count = other.count;
+        }
+
+    /** Sorts the partials by frequency.  This is an insertion sort, which is fastest when they are nearly in order already.  
+        The frame must not be single precision. */
+    public void sort()
+        {
+        insertionSort(frequencies, amplitudes, orders, frequencies.length);
+        }
+
+
+
+    //// INTERPOLATION
+
+    /** Sets RESULT[i] to TO[MAP[i]] * ALPHA + FROM[i] * (1.0 - ALPHA) for every partial i, that is, moves each value from
+        FROM toward the value in TO that MAP pairs it with.  If MAP is null, each value is paired with the one at the 
+        same index.  This works for either frequencies or amplitudes.  RESULT may be FROM, but not TO unless MAP is null. */
+    public static void interpolate(double[] from, double[] to, int[] map, double alpha, double[] result)
+        {
+        double beta = 1.0 - alpha;
+        if (map == null)
+            {
+            for(int i = 0; i < result.length; i++)
+                result[i] = to[i] * alpha + from[i] * beta;
+            }
+        else
+            {
+            for(int i = 0; i < result.length; i++)
+                result[i] = to[map[i]] * alpha + from[i] * beta;
+            }
+        }
+
+
+
+    //// SORTING
+
+    // Swaps partials i and j
+    static void swap(int i, int j, double[] freq, double[] amp, byte[] order)
+        {
+        double d = freq[i];
+        freq[i] = freq[j];
+        freq[j] = d;
+        d = amp[i];
+        amp[i] = amp[j];
+        amp[j] = d;
+        byte e = order[i];
+        order[i] = order[j];
+        order[j] = e;
+        }
+
+    /** Sorts the first LEN partials by frequency with an insertion sort. */
+    public static void insertionSort(double[] freq, double[] amp, byte[] order, int len)
+        {
+        for (int i=1; i<len; i++) // Insert i'th record
+            for (int j=i; (j>0) && (freq[j] < freq[j-1]); j--)
+                {
+                swap(j, j-1, freq, amp, order);
+                }
+        }
+
+    // quicksort partition
+    static int quicksortPartition(double[] freq, double[] amp, byte[] order, int low, int high)
+        {
+        double pivot = freq[high];
+
+        // index of smaller element
+        int i = (low-1);
+        for (int j = low; j <= high-1; j++)
+            {
+            // If current element is smaller than or
+            // equal to pivot
+            if (freq[j] <= pivot)
+                {
+                i++;
+                swap(i, j, freq, amp, order);
+                }
+            }
+
+        swap(i+1, high, freq, amp, order);
+        return i+1;
+        }
+
+    /** Sorts all the partials by frequency with an iterative quicksort.  STACK must be at least as long as the arrays. */
+    public static void quickSort(double[] freq, double[] amp, byte[] order, int[] stack)
+        {
+        int l = 0;
+        int h = freq.length - 1;
+
+        // initialize top of stack
+        int top = -1;
+
+        // push initial values of l and h to stack
+        stack[++top] = l;
+        stack[++top] = h;
+
+        // Keep popping from stack while is not empty
+        while (top >= 0)
+            {
+            // Pop h and l
+            h = stack[top--];
+            l = stack[top--];
+
+            // Set pivot element at its correct position
+            // in sorted array
+            int p = quicksortPartition(freq, amp, order, l, h);
+
+            // If there are elements on left side of pivot,
+            // then push left side to stack
+            if (p-1 > l)
+                {
+                stack[++top] = l;
+                stack[++top] = p - 1;
+                }
+
+            // If there are elements on right side of pivot,
+            // then push right side to stack
+            if (p+1 < h)
+                {
+                stack[++top] = p + 1;
+                stack[++top] = h;
+                }
+            }
+        }
+
+    // This is basically a somewhat better bubble sort.  I think bubble sort
+    // will likely be the best option in most cases because we won't have big
+    // frequency randomization.
+    //
+    // Modified from https://www.geeksforgeeks.org/cocktail-sort/
+
+    /** Sorts all the partials by frequency with a cocktail sort.  Returns TRUE if any partials moved. */
+    public static boolean cocktailSort(double[] frequencies, double[] amplitudes, byte[] orders)
+        {
+        boolean swapped = true;
+        boolean everSwapped = false;
+
+        int start = 0;
+        int end = frequencies.length;
+
+        while (swapped==true)
+            {
+            // reset the swapped flag on entering the
+            // loop, because it might be true from a
+            // previous iteration.
+            swapped = false;
+
+            // loop from bottom to top same as
+            // the bubble sort
+            for (int i = start; i < end-1; ++i)
+                {
+                if (frequencies[i] > frequencies[i + 1])
+                    {
+                    swap(i, i+1, frequencies, amplitudes, orders);
+                    swapped = true;
+                    }
+                }
+
+            // if nothing moved, then array is sorted.
+            if (swapped==false)
+                break;
+
+            // otherwise, reset the swapped flag so that it
+            // can be used in the next stage
+            swapped = false;
+
+            // move the end point back by one, because
+            // item at the end is in its rightful spot
+            end = end-1;
+
+            // from top to bottom, doing the
+            // same comparison as in the previous stage
+            for (int i = end-1; i >=start; i--)
+                {
+                if (frequencies[i] > frequencies[i+1])
+                    {
+                    swap(i, i+1, frequencies, amplitudes, orders);
+                    swapped = true;
+                    }
+                }
+
+            // increase the starting point, because
+            // the last stage would have moved the next
+            // smallest number to its rightful spot.
+            start = start+1;
+
+            everSwapped = everSwapped || swapped;
+            }
+        return everSwapped;
+        }
+    }
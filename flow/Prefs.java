@@ -576,6 +576,19 @@ public class Prefs
         return getLastX("InputAudioDevice"); // null is default
         }
 
+    public static void setLastAudioSink(String audioSink)
+        {
+        setLastX("" + audioSink, "AudioSink");
+        }
+
+    /** Returns the name of an alternative AudioSink (see AudioSink.forName()), or null if
+        we should write to the audio device as usual.  Normally this is set on the command line,
+        as in -DAudioSink=/tmp/flowpipe */
+    public static String getLastAudioSink()
+        {
+        return getLastX("AudioSink"); // null is default
+        }
+
     public static void setLastMasterGain(double gain)
         {
         setLastX("" + gain, "MasterGain");
@@ -613,13 +626,29 @@ public class Prefs
         }
 
 
+    /** Returns whether the voice threads hand their partials to the Output thread as floats rather than doubles.
+        At 256 partials this shrinks each voice's frame in the Swap from 4.3KB to 2.3KB, and with it the traffic 
+        between the voice threads and the Output thread.  Modules and the engines still work in double precision.  
+        AudioDiff measures an SNR of 73 dB (at most 6 steps of 32768 off) for Apparition, and 82-91 dB (at most 
+        2-6 steps) for Drawbars, Atlantean, Bedevilment, and Sequentialism.  Read once, at startup.  The default is FALSE. */
+    public static boolean getLastSinglePrecision()
+        {
+        String s = getLastX("SinglePrecision");
+        return Boolean.parseBoolean(s); // default is FALSE
+        }
+
+    public static void setLastSinglePrecision(boolean val)
+        {
+        setLastX("" + val, "SinglePrecision");
+        }
+
     public static int getLastSinQuality()
         {
         String s = getLastX("SinQuality");
         try
             {
             int x = Integer.parseInt(s);
-            if (x < Output.SIN_QUALITY_LOW || x > Output.SIN_QUALITY_HIGH)
+            if (x < Output.SIN_QUALITY_LOW || x > Output.SIN_QUALITY_RECURSIVE)
                 x = Output.SIN_QUALITY_DEFAULT;
             return x;
             } 
@@ -634,6 +663,201 @@ public class Prefs
         setLastX("" + val, "SinQuality");
         }
 
+    public static int getLastEngine()
+        {
+        String s = getLastX("Engine");
+        try
+            {
+            int x = Integer.parseInt(s);
+            if (x < Output.ENGINE_SCALAR || x > Output.ENGINE_SPECTRAL)
+                x = Output.ENGINE_DEFAULT;
+            return x;
+            } 
+        catch (Exception e) 
+            {
+            return Output.ENGINE_DEFAULT;
+            }
+        }
+
+    public static void setLastEngine(int val)
+        {
+        setLastX("" + val, "Engine");
+        }
+
+    /** Returns the fewest live partials a voice must have in a block for the spectral engine to build it.  Other 
+        voices are built with the standard engine.  The spectral engine is faster, but costs some accuracy, because 
+        it holds each partial's amplitude and frequency fixed for a block and crossfades between blocks.  Against the 
+        standard engine, AudioDiff measures an SNR of about 68 dB (at most 27 steps of 32768 off) for Apparition, 
+        63 dB (at most 63 steps) for Sequentialism, and 52 dB (at most 1057 steps) for Bedevilment, at 256 partials.  
+        Drawbars and Atlantean never have this many live partials in a voice, so they come out identical.  Phases 
+        reset under partials which are still sounding, as in fast legato chords, come out much worse, because the 
+        reset is spread over a block.  A larger FFT doesn't help.  So raise this if the difference is audible in your patches. */
+    public static int getLastSpectralThreshold()
+        {
+        String s = getLastX("SpectralThreshold");
+        try
+            {
+            if (s != null)
+                return Integer.parseInt(s);
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_SPECTRAL_THRESHOLD;
+        }
+
+    public static void setLastSpectralThreshold(int num)
+        {
+        setLastX("" + num, "SpectralThreshold");
+        }
+
+    public static int getLastHandoffSpins()
+        {
+        String s = getLastX("HandoffSpins");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val >= 0) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_HANDOFF_SPINS;
+        }
+
+    public static void setLastHandoffSpins(int num)
+        {
+        setLastX("" + num, "HandoffSpins");
+        }
+
+    public static int getLastVoiceLead()
+        {
+        String s = getLastX("VoiceLead");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val >= 1) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_VOICE_LEAD;
+        }
+
+    public static void setLastVoiceLead(int num)
+        {
+        setLastX("" + num, "VoiceLead");
+        }
+
+    public static int getLastSleepBlocks()
+        {
+        String s = getLastX("SleepBlocks");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val >= 0) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_SLEEP_BLOCKS;
+        }
+
+    public static void setLastSleepBlocks(int num)
+        {
+        setLastX("" + num, "SleepBlocks");
+        }
+
+    /** Returns how often, in seconds, the Output prints its metrics to stderr, or 0 if it doesn't. */
+    public static int getLastMetricsLogInterval()
+        {
+        String s = getLastX("MetricsLogInterval");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val >= 0) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_METRICS_LOG_INTERVAL;
+        }
+
+    public static void setLastMetricsLogInterval(int num)
+        {
+        setLastX("" + num, "MetricsLogInterval");
+        }
+
+    /** Returns the Governor's policy, a comma-separated list of stages (see Governor), or an empty string if it is turned off. */
+    public static String getLastGovernorPolicy()
+        {
+        String s = getLastX("GovernorPolicy");
+        if (s != null)
+            return s;
+        return Output.DEFAULT_GOVERNOR_POLICY;
+        }
+
+    public static void setLastGovernorPolicy(String policy)
+        {
+        setLastX(policy, "GovernorPolicy");
+        }
+
+    public static int getLastGovernorHigh()
+        {
+        String s = getLastX("GovernorHigh");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val > 0) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_GOVERNOR_HIGH;
+        }
+
+    public static void setLastGovernorHigh(int percent)
+        {
+        setLastX("" + percent, "GovernorHigh");
+        }
+
+    public static int getLastGovernorLow()
+        {
+        String s = getLastX("GovernorLow");
+        try
+            {
+            if (s != null)
+                {
+                int val = Integer.parseInt(s);
+                if (val >= 0) return val;
+                }
+            }
+        catch (NumberFormatException e)
+            {
+            }
+        return Output.DEFAULT_GOVERNOR_LOW;
+        }
+
+    public static void setLastGovernorLow(int percent)
+        {
+        setLastX("" + percent, "GovernorLow");
+        }
+
     public static int getLastXAsInt(String slot, String moduleName, int defaultVal)
         {
         String tnls = getLastX(slot, moduleName);
@@ -0,0 +1,251 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import flow.modules.*;
+import java.util.*;
+import java.io.*;
+import java.util.zip.*;
+import javax.sound.midi.*;
+import org.json.*;
+
+/**
+   Render plays a patch offline, without a GUI, audio device, or MIDI device, and writes the
+   result to an AudioSink, typically a 16-bit WAV file.  It runs as fast as the machine allows rather 
+   than in real time, so it's useful for batch rendering, A/B comparisons of the synthesis engine, and profiling.
+
+   <p>Usage: <tt>java flow.Render patch.flow notes.txt output [tail]</tt>
+
+   <p>The output is a name handed to AudioSink.forName(): a file ending in .wav, "-" for raw PCM on stdout, 
+   "null" to discard the audio (to measure raw speed), or otherwise a file or named pipe to receive raw PCM.
+
+   <p>The notes file is plain text, one note per line, of the form
+   <tt>START DURATION NOTE [VELOCITY [CHANNEL]]</tt>, where START and DURATION are in seconds,
+   NOTE and VELOCITY are MIDI values (VELOCITY defaults to 100), and CHANNEL is 1...16 (defaults to 1).
+   Blank lines and lines starting with # are ignored.  The optional TAIL is the number of seconds to
+   keep rendering after the last note has been released (default 2.0).
+
+   <p>Voices, partials, sine quality, and so on are taken from the Prefs as usual, and
+   can be overridden on the command line, for example <tt>java -DVoices=16 flow.Render ...</tt>
+**/
+
+public class Render
+    {
+    public static final double DEFAULT_TAIL = 2.0;
+    public static final int DEFAULT_VELOCITY = 100;
+    /** The seed for the Sounds' random number generators, so that renders of the same patch can be compared. */
+    public static final long RANDOM_SEED = 0;
+
+    /** A note to be played, with start and end times in samples. */
+    static class Note
+        {
+        long start;
+        long end;
+        int note;
+        int velocity;
+        int channel;            // 0...15
+        long onBlock;           // the block in which the note on is dispatched
+        long offBlock;          // the block in which the note off is dispatched, always after onBlock
+        }
+
+    /** Reads the notes file into a list of Notes. */
+    static ArrayList<Note> loadNotes(File file) throws IOException
+        {
+        ArrayList<Note> notes = new ArrayList<Note>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+            {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null)
+                {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                String[] tokens = line.split("\\s+");
+                if (tokens.length < 3)
+                    throw new IOException("Line " + lineNumber + " of " + file + " should be START DURATION NOTE [VELOCITY [CHANNEL]]");
+                try
+                    {
+                    Note n = new Note();
+                    n.start = (long)(Double.parseDouble(tokens[0]) * Output.SAMPLING_RATE);
+                    n.end = n.start + (long)(Double.parseDouble(tokens[1]) * Output.SAMPLING_RATE);
+                    n.note = Integer.parseInt(tokens[2]);
+                    n.velocity = (tokens.length > 3 ? Integer.parseInt(tokens[3]) : DEFAULT_VELOCITY);
+                    n.channel = (tokens.length > 4 ? Integer.parseInt(tokens[4]) - 1 : 0);
+                    if (n.start < 0 || n.end < n.start || n.note < 0 || n.note > 127 ||
+                        n.velocity < 1 || n.velocity > 127 || n.channel < 0 || n.channel > 15)
+                        throw new IOException("Line " + lineNumber + " of " + file + " has an out-of-range value");
+                    notes.add(n);
+                    }
+                catch (NumberFormatException ex)
+                    {
+                    throw new IOException("Line " + lineNumber + " of " + file + " has a malformed number");
+                    }
+                }
+            }
+        finally
+            {
+            reader.close();
+            }
+        return notes;
+        }
+
+    /** Builds an offline Output with all of its Sounds, and loads the given patch file into it. */
+    public static Output load(File patch) throws Exception
+        {
+        Output output = new Output(true);
+        output.randomSeed = RANDOM_SEED;
+        for(int i = 0; i < Output.getNumVoices(); i++)
+            {
+            Sound sound = new Sound(output);
+            new Out(sound);
+            sound.reset();
+            }
+
+        // Disconnect from any MIDI devices: we'll provide our own notes
+        Input input = output.getInput();
+        ArrayList<Midi.MidiDeviceWrapper> devices = input.getDevices();
+        input.setupMIDI(Input.CHANNEL_OMNI, 0, devices.get(0), devices.get(0));
+
+        JSONObject obj = new JSONObject(new JSONTokener(new GZIPInputStream(new FileInputStream(patch))));
+
+        // This mirrors AppMenu.doLoad(), minus the Rack
+        output.lock();
+        try
+            {
+            Modulation[] mods = Sound.loadModules(obj, Sound.loadFlowVersion(obj));
+            Sound sound = output.getSound(0);
+            int numRegistered = sound.getNumRegistered();
+            for(int j = 0; j < numRegistered; j++)
+                sound.removeRegistered(0);
+            for(int j = 0; j < mods.length; j++)
+                {
+                sound.register(mods[j]);
+                mods[j].setSound(sound);
+                if (mods[j] instanceof Out)
+                    {
+                    sound.setEmits((Out)(mods[j]));
+                    }
+                mods[j].reset();
+                }
+
+            output.setNumGroups(1);
+            int numNewGroups = Sound.loadGroups(output.getGroups(), obj);
+            if (numNewGroups > 0)
+                {
+                output.setNumGroupsUnsafe(numNewGroups + 1);
+                }
+            output.getGroup(Output.PRIMARY_GROUP).setBothNotes(0, 127);
+            output.assignGroupsToSounds();
+            }
+        finally
+            {
+            output.unlock();
+            }
+        return output;
+        }
+
+    /** Renders the given notes through the given offline Output into the sink, continuing for TAIL seconds
+        after the last note has been released.  Closes the sink when done.  Returns the number of frames written. */
+    public static long render(Output output, ArrayList<Note> notes, AudioSink sink, double tail) throws Exception
+        {
+        if (!output.isOffline())
+            throw new IllegalArgumentException("Render.render() requires an offline Output");
+
+        int skip = Output.getSkip();
+        long last = 0;
+        for(Note n : notes)
+            last = Math.max(last, n.end);
+        long numBlocks = (last + (long)(tail * Output.SAMPLING_RATE) + skip - 1) / skip;
+        long numFrames = numBlocks * skip;
+
+        // Work out which block each note on and note off falls in, and sort them by block, once, so that each 
+        // block we need only look at the next few.  A note is always released at least a block after it starts.
+        Note[] ons = notes.toArray(new Note[notes.size()]);
+        for(Note n : ons)
+            {
+            n.onBlock = (n.start + skip - 1) / skip;
+            n.offBlock = Math.max((n.end + skip - 1) / skip, n.onBlock + 1);
+            }
+        Note[] offs = ons.clone();
+        // These sorts are stable, so notes in the same block are dispatched in the order they were given
+        Arrays.sort(ons, new Comparator<Note>() { public int compare(Note a, Note b) { return Long.compare(a.onBlock, b.onBlock); } });
+        Arrays.sort(offs, new Comparator<Note>() { public int compare(Note a, Note b) { return Long.compare(a.offBlock, b.offBlock); } });
+        int nextOn = 0;
+        int nextOff = 0;
+
+        Input input = output.getInput();
+        try
+            {
+            for(long block = 0; block < numBlocks; block++)
+                {
+                // Dispatch the notes due in this block.  Note offs first, so a retriggered note isn't immediately cut off.
+                while(nextOff < offs.length && offs[nextOff].offBlock <= block)
+                    {
+                    Note n = offs[nextOff++];
+                    input.processNoteOff(new ShortMessage(ShortMessage.NOTE_OFF, n.channel, n.note, 64), false, false);
+                    }
+                while(nextOn < ons.length && ons[nextOn].onBlock <= block)
+                    {
+                    Note n = ons[nextOn++];
+                    input.processNoteOn(new ShortMessage(ShortMessage.NOTE_ON, n.channel, n.note, n.velocity), false);
+                    }
+
+                output.go();
+                output.renderBlock();
+
+                byte[] buffer = output.getAudioBuffer();
+                sink.write(buffer, 0, buffer.length);
+                }
+            }
+        finally
+            {
+            sink.close();
+            }
+        return numFrames;
+        }
+
+    public static void main(String[] args)
+        {
+        if (args.length < 3 || args.length > 4)
+            {
+            System.err.println("Usage: java flow.Render patch.flow notes.txt [output.wav | - | null | pipe] [tail]");
+            System.exit(1);
+            }
+
+        System.setProperty("java.awt.headless", "true");
+        try
+            {
+            double tail = (args.length == 4 ? Double.parseDouble(args[3]) : DEFAULT_TAIL);
+            ArrayList<Note> notes = loadNotes(new File(args[1]));
+            Output output = load(new File(args[0]));
+
+            long time = System.currentTimeMillis();
+            long numFrames = render(output, notes, AudioSink.forName(args[2], Output.isStereo() ? 2 : 1), tail);
+            time = System.currentTimeMillis() - time;
+
+            double seconds = numFrames / (double)Output.SAMPLING_RATE;
+            System.err.println("Rendered " + seconds + " seconds of audio in " + (time / 1000.0) + " seconds (" +
+                (time == 0 ? "-" : String.valueOf(seconds * 1000.0 / time)) + "x real time)");
+            long sleeps = 0;
+            long wakes = 0;
+            for(int i = 0; i < output.getNumSounds(); i++)
+                {
+                sleeps += output.getSleepCount(i);
+                wakes += output.getWakeCount(i);
+                }
+            System.err.println("Voices went to sleep " + sleeps + " times and woke up " + wakes + " times");
+            if (output.getAndResetClipped())
+                System.err.println("Render.main() WARNING: output was clipped");
+            }
+        catch (Exception ex)
+            {
+            ex.printStackTrace();
+            System.exit(1);
+            }
+        System.exit(0);
+        }
+    }
@@ -0,0 +1,131 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   A pool of threads which runs a set of numbered tasks (such as "call go() on Sound i" or "build
+   the samples for voice i"), as a batch, over and over again.  The Sound Output thread uses one for building
+   the samples, and the primary voice thread uses another for updating the Sounds.
+
+   <p>Each thread has a home chunk of TASKS_PER_THREAD consecutive tasks, which it runs first, from the front,
+   so that from batch to batch the same thread tends to handle the same voices and their arrays stay
+   warm in its cache.  When it's done with its chunk it steals unclaimed tasks from the other chunks, from the
+   back, starting with its neighbor's.  So if only two voices are sounding and they're in the same chunk,
+   another thread picks up the second one rather than sitting idle.  Each task is claimed with a single
+   compare-and-set per batch.
+
+   <p>The threads are woken and waited on with Handoffs.
+**/
+
+class Scheduler
+    {
+    /** A task to run.  It will be run at most once per batch, by any of the threads. */
+    public interface Task
+        {
+        public void run(int index);
+        }
+
+    Task task;
+    int numThreads;
+    int tasksPerThread;
+    Handoff[] handoffs;
+    // For each task, the batch in which it was last claimed
+    AtomicIntegerArray claims;
+    // The current batch, and how many tasks it has.  These are published to the threads by signaling their Handoffs.
+    int batch;
+    int count;
+
+    /** Builds and starts a Scheduler for up to NUM_TASKS tasks, with TASKS_PER_THREAD in each thread's home chunk.
+        The threads are named NAME followed by their number.  */
+    public Scheduler(String name, int numTasks, int tasksPerThread, int spins, Task task)
+        {
+        this.task = task;
+        this.tasksPerThread = tasksPerThread;
+        numThreads = (numTasks + tasksPerThread - 1) / tasksPerThread;
+        handoffs = new Handoff[numThreads];
+        claims = new AtomicIntegerArray(numTasks);
+        for(int i = 0; i < numThreads; i++)
+            {
+            handoffs[i] = new Handoff(false, spins);
+            }
+
+        for(int i = 0; i < numThreads; i++)
+            {
+            final int _i = i;
+            Thread thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    while(true)
+                        {
+                        handoffs[_i].await(true);
+                        work(_i);
+                        handoffs[_i].signal(false);
+                        }
+                    }
+                });
+            thread.setName(name + " " + i);
+            thread.setDaemon(true);
+            thread.start();
+            }
+        }
+
+    /** Returns the number of threads. */
+    public int getNumThreads() { return numThreads; }
+
+    /** Runs tasks 0 ... COUNT-1 and blocks until they're all done.  Only one thread may call this at a time. */
+    public void run(int count)
+        {
+        if (count > claims.length()) count = claims.length();
+        batch++;
+        this.count = count;
+
+        // Threads without any home tasks stay asleep
+        int n = (count + tasksPerThread - 1) / tasksPerThread;
+        for(int i = 0; i < n; i++)
+            {
+            handoffs[i].signal(true);
+            }
+        for(int i = 0; i < n; i++)
+            {
+            handoffs[i].await(false);
+            }
+        }
+
+    // Claims task I for batch B, returning whether we got it
+    boolean claim(int i, int b)
+        {
+        int c = claims.get(i);
+        return (c != b && claims.compareAndSet(i, c, b));
+        }
+
+    // Called by thread HOME to run its own tasks and then steal others'
+    void work(int home)
+        {
+        int b = batch;
+        int count = this.count;
+        int n = (count + tasksPerThread - 1) / tasksPerThread;         // threads with tasks this batch
+
+        int start = home * tasksPerThread;
+        int end = Math.min(start + tasksPerThread, count);
+        for(int i = start; i < end; i++)
+            {
+            if (claim(i, b)) task.run(i);
+            }
+
+        for(int k = 1; k < n; k++)
+            {
+            int victim = (home + k) % n;
+            start = victim * tasksPerThread;
+            end = Math.min(start + tasksPerThread, count);
+            for(int i = end - 1; i >= start; i--)
+                {
+                if (claim(i, b)) task.run(i);
+                }
+            }
+        }
+    }
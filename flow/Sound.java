@@ -74,6 +74,9 @@ public class Sound
     volatile int channel = Input.CHANNEL_OMNI;  // we need to assign it *something* initially...
 
     volatile boolean requestReset = false;
+    
+    // Whether the Sound's key is down, that is, it's been gated but not yet released
+    volatile boolean gated = false;
 
     public Sound(Output output)
         {
@@ -97,7 +100,7 @@ public class Sound
     public Output getOutput() { return output; }
 
     /** Adds a Modulation / Unit to the end of the registry. */
-    public void register(Modulation mod) { elements.add(mod); }
+    public void register(Modulation mod) { elements.add(mod); invalidatePlan(); }
 
     /** Returns the number of Modulations / Units registered with this Sound.
         This does not include Constants.   */
@@ -110,10 +113,10 @@ public class Sound
     public ArrayList<Modulation> getRegistered() { return elements; }
     
     /** Removes a Modulation / Unit */
-    public Modulation removeRegistered(int i) { return elements.remove(i); }
+    public Modulation removeRegistered(int i) { invalidatePlan(); return elements.remove(i); }
     
     /** Adds a Modulation / Unit at position i*/
-    public void addRegistered(int i, Modulation modulation) { elements.add(i, modulation); }
+    public void addRegistered(int i, Modulation modulation) { elements.add(i, modulation); invalidatePlan(); }
     
     /** Value returned by findRegistered if it can't find a given Modulation / Unit in its registry */
     public static final int NOT_FOUND = -1;
@@ -161,7 +164,7 @@ public class Sound
     public double getPitch() { if (output.getInput().getRespondsToBend()) return pitch * bend; else return pitch; }
 
     /** Sets the Unit responsible for emitting the final partials. */
-    public void setEmits(Unit unit) { this.emits = unit; }
+    public void setEmits(Unit unit) { this.emits = unit; invalidatePlan(); }
     /** Returns the Unit responsible for emitting the final partials. */
     public Unit getEmits() { return this.emits; }
     
@@ -171,16 +174,213 @@ public class Sound
     public double getPortamento() { return portamento; }
     void updatePortamento() { pitch = portamento * note + (1.0 - portamento) * pitch; }
     
-    /** Causes all Modulations / Units to have their go() methods called, in order. */
+    // The elements which go() runs, in order
+    Modulation[] plan = new Modulation[0];
+    // The registry index of each element in the plan
+    int[] planIndexes = new int[0];
+    // The first Sound in our group, whose shared elements we share this block, or null if it's us
+    Sound leader;
+    // Whether the elements or their wiring have changed since the plan was built
+    volatile boolean planDirty = true;
+
+    /** Informs the Sound that Modulations / Units have been registered or removed, or
+        that their inputs have changed, so it must rebuild the list of elements that go() runs. */
+    public void invalidatePlan() { planDirty = true; }
+    
+    /** Builds the list of elements that go() runs.  These are the elements which the emitting Unit
+        depends on, directly or indirectly, through its Unit inputs, constraint input, or Modulation inputs, plus
+        the elements with side effects and whatever they depend on.  Anything else can't be heard, 
+        so there's no reason to run it.  The elements stay in registry order, which is the order
+        in the Rack, because that's the order the patch has always been computed in: an element 
+        which reads from one to its right gets that element's outputs from the previous block.  */
+    void buildPlan()
+        {
+        planDirty = false;              // before we look, so a rewire while we're building marks us again
+        
+        Set<Modulation> live = Collections.newSetFromMap(new IdentityHashMap<Modulation, Boolean>());
+        ArrayList<Modulation> pending = new ArrayList<Modulation>();
+        if (emits != null) pending.add(emits);
+        int len = elements.size();
+        for(int i = 0; i < len; i++)
+            {
+            Modulation mod = elements.get(i);
+            if (mod.hasSideEffects()) pending.add(mod);
+            }
+        
+        while(!pending.isEmpty())
+            {
+            Modulation mod = pending.remove(pending.size() - 1);
+            if (mod == null || !live.add(mod)) continue;
+            int n = mod.getNumModulations();
+            for(int i = 0; i < n; i++)
+                pending.add(mod.getModulation(i));
+            if (mod instanceof Unit)
+                {
+                Unit unit = (Unit)mod;
+                n = unit.getNumInputs();
+                for(int i = 0; i < n; i++)
+                    pending.add(unit.getInput(i));
+                pending.add(unit.getConstraintIn());
+                }
+            }
+        
+        // Elements with side effects, like Choice, may change their inputs per-Sound, so their inputs can't be shared
+        Set<Modulation> shared = Collections.newSetFromMap(new IdentityHashMap<Modulation, Boolean>());
+        Set<Modulation> unshareable = Collections.newSetFromMap(new IdentityHashMap<Modulation, Boolean>());
+        for(int i = 0; i < len; i++)
+            {
+            Modulation mod = elements.get(i);
+            if (mod.hasSideEffects())
+                {
+                int n = mod.getNumModulations();
+                for(int j = 0; j < n; j++)
+                    unshareable.add(mod.getModulation(j));
+                if (mod instanceof Unit)
+                    {
+                    Unit unit = (Unit)mod;
+                    n = unit.getNumInputs();
+                    for(int j = 0; j < n; j++)
+                        unshareable.add(unit.getInput(j));
+                    }
+                }
+            }
+        
+        ArrayList<Modulation> p = new ArrayList<Modulation>();
+        int[] indexes = new int[len];
+        for(int i = 0; i < len; i++)
+            {
+            Modulation mod = elements.get(i);
+            if (live.contains(mod)) 
+                {
+                indexes[p.size()] = i;
+                p.add(mod);
+                mod.shared = !unshareable.contains(mod) && canShare(mod, shared);
+                if (mod.shared) shared.add(mod);
+                }
+            else 
+                {
+                mod.shared = false;
+                mod.profileNanos = 0;          // so the profiler doesn't show a stale cost
+                }
+            if (!mod.shared) mod.unshare();
+            }
+        plan = p.toArray(new Modulation[p.size()]);
+        planIndexes = indexes;
+        }
+    
+    // Returns true if MOD is voice independent and all its inputs are Constants, Nil, or elements in SHARED.
+    // Inputs to MOD's right haven't been considered yet, so they don't count as shared.
+    boolean canShare(Modulation mod, Set<Modulation> shared)
+        {
+        if (!mod.isVoiceIndependent() || !mod.isStateless()) return false;
+        int n = mod.getNumModulations();
+        for(int i = 0; i < n; i++)
+            {
+            Modulation m = mod.getModulation(i);
+            if (!(m instanceof Constant) && !shared.contains(m)) return false;
+            }
+        if (mod instanceof Unit)
+            {
+            Unit unit = (Unit)mod;
+            n = unit.getNumInputs();
+            for(int i = 0; i <= n; i++)
+                {
+                Unit u = (i == n ? unit.getConstraintIn() : unit.getInput(i));
+                if (!(u instanceof Nil) && !shared.contains(u)) return false;
+                }
+            }
+        return true;
+        }
+    
+    /** Updates the elements which this Sound shares with the other Sounds in its group.  
+        The Output calls this once per block, before go(), on the first Sound in each group.  */
+    public void goShared()
+        {
+        leader = null;
+        if (planDirty) buildPlan();
+        Modulation[] plan = this.plan;
+        int len = plan.length;
+        for(int i = 0; i < len; i++)
+            {
+            Modulation mod = plan[i];
+            if (mod.shared)
+                {
+                mod.unshare();              // in case we were sharing someone else's before
+                if (mod.needsGo()) mod.go();
+                }
+            }
+        }
+    
+    /** Sets the first Sound in our group, whose shared elements we'll use this block.  */
+    public void setLeader(Sound leader) { this.leader = leader; }
+    
+    // Updates the element at position I in the plan
+    void update(Modulation mod, int i)
+        {
+        if (mod.shared)
+            {
+            Sound leader = this.leader;
+            if (leader == null) return;                             // goShared() did it already
+            int index = planIndexes[i];
+            if (index < leader.elements.size())
+                {
+                Modulation from = leader.elements.get(index);
+                if (from.shared && from.getClass() == mod.getClass())
+                    {
+                    mod.share(from);
+                    return;
+                    }
+                }
+            mod.unshare();                                          // the leader's patch differs, so do it ourselves
+            }
+        if (mod.needsGo()) mod.go();
+        }
+    
+    // Blocks since we last profiled
+    int profileCounter = 0;
+    
+    /** Causes the Modulations / Units which can be heard to have their go() methods called, in order,
+        skipping stateless ones whose inputs haven't changed, and sharing the outputs of voice independent
+        ones with the first Sound in our group.  See buildPlan(), goShared(), and Modulation.needsGo() */
     public void go()
         {
         updatePortamento();
-        int len = elements.size();
+        if (planDirty) buildPlan();
+        Modulation[] plan = this.plan;
+        int len = plan.length;
         
+        int interval = output.profileInterval;
+        if (interval > 0 && ++profileCounter >= interval)
+            {
+            profileCounter = 0;
+            for(int i = 0; i < len; i++)
+                {
+                Modulation mod = plan[i];
+                long start = System.nanoTime();
+                update(mod, i);
+                mod.profile(System.nanoTime() - start);
+                }
+            }
+        else
+            {
+            for(int i = 0; i < len; i++)
+                {
+                update(plan[i], i);
+                }
+            }
+        }
+
+    /** Returns whether the Modulations / Units which go() runs can all sleep, so that the Output may 
+        stop calling go() once the Sound has been released and fallen silent.  See Modulation.canSleep() */
+    public boolean canSleep()
+        {
+        Modulation[] plan = this.plan;
+        int len = plan.length;
         for(int i = 0; i < len; i++)
             {
-            elements.get(i).go();
+            if (!plan[i].canSleep()) return false;
             }
+        return true;
         }
 
     /** Causes all Modulations / Units to have their gate() methods called, in order.
@@ -191,6 +391,8 @@ public class Sound
         for(int i = 0; i < len; i++)
             elements.get(i).gate();
         requestReset = true;
+        gated = true;
+        output.wake(index);
         }
 
     /** Causes all Modulations / Units to have their release() methods called, in order.
@@ -200,8 +402,13 @@ public class Sound
         int len = elements.size();
         for(int i = 0; i < len; i++)
             elements.get(i).release();
+        gated = false;
         }
 
+    /** Returns whether the Sound has been gated and not yet released.  Released Sounds 
+        may be put to sleep by the Output once they fall silent. */
+    public boolean isGated() { return gated; }
+
     /** Resets all Modulations / Units to their initial positions. */
     public void reset()
         {
@@ -209,12 +416,15 @@ public class Sound
         for(int i = 0; i < len; i++)
             elements.get(i).reset();
         requestReset = true;
+        output.wake(index);
         }
 
-    /** Resets all Modulations / Units to their initial positions. */
+    /** Resets the phases of the Sound's partials to zero, starting with the next block of partials. */
     public void resetPartialPhases()
         {
-        output.positions[index] = new double[Unit.NUM_PARTIALS];        // FIXME: maybe we should bzero
+        // The Output thread owns the positions and phasors, so rather than zeroing them here while
+        // it's using them, we ask it to do so when it picks up our next partials.  See Output.buildVoice()
+        requestReset = true;
         }
 
     /** Informs all Modulations / Units that a clock reset, or MIDI CLOCK START, occurred. */
@@ -0,0 +1,281 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import flow.utilities.*;
+
+/**
+   An inverse-FFT overlap-add version of Output.buildSample(), after Rodet and Depalle's
+   FFT<sup>-1</sup> additive synthesis.  Rather than summing sines sample by sample,
+   once per block (the "hop", which is Output.getSkip() samples) we build each voice's short-term
+   spectrum directly, do a single inverse FFT, and overlap-add the result.  This costs O(N log N)
+   for the FFT plus a small constant per partial, rather than O(partials * hop), so it pays off
+   for large numbers of partials.
+
+   <p>Each partial is drawn into the spectrum as the main lobe (9 bins) of a Blackman-Harris window
+   centered at its frequency, scaled by its amplitude and rotated to its phase.  The sidelobes we leave
+   out are below -92dB.  The output is real, so its spectrum is symmetric: rather than drawing each partial's
+   mirror image at the negative frequencies too, we draw only the partial itself at twice the amplitude, and
+   take the real part of the inverse FFT, which comes to the same thing.  The phases come from the same
+   sine table as Output.SIN_QUALITY_LOW.  The FFT is at least four hops long.  After the inverse FFT we divide out the
+   Blackman-Harris window and apply a triangular window two hops long, so successive frames, each one
+   hop apart, crossfade into each other.
+
+   <p>Each frame holds its partials' amplitudes and frequencies fixed, and the crossfades between frames
+   replace the per-sample amplitude smoothing in buildSample().  So the output is close to, but not the
+   same as, the standard engine: its phases line up sample for sample, but its amplitude changes are
+   spread over a hop.  AudioDiff puts the difference at around 52 to 68 dB SNR, depending on the patch: 
+   see Prefs.getLastSpectralThreshold().  The sine quality setting is ignored.
+
+   <p>This engine is only used if the skip is at least MINIMUM_HOP.  Even then, it decides voice by voice and 
+   block by block: a voice with fewer than Prefs.getLastSpectralThreshold() live partials is built with the 
+   standard engine instead.  When a voice comes back to this engine it has no previous frame to crossfade 
+   from, so its first block is also built with the standard engine, and its frame is only used for the next block.
+**/
+
+class SpectralOscillators implements Output.Oscillators
+    {
+    /** Below this hop size the frames are too short to be worthwhile. */
+    public static final int MINIMUM_HOP = 8;
+
+    // The Blackman-Harris main lobe is +/- 4 bins
+    static final int LOBE = 4;
+    // The most bins the main lobe touches
+    static final int LOBE_BINS = LOBE * 2 + 1;
+    // Resolution of the lobe table, in entries per bin
+    static final int LOBE_RESOLUTION = 256;
+
+    // 4-term Blackman-Harris coefficients
+    static final double BH0 = 0.35875;
+    static final double BH1 = 0.48829;
+    static final double BH2 = 0.14128;
+    static final double BH3 = 0.01168;
+
+    Output output;
+    FFT.InPlace fft;
+    int hop;
+    int size;                   // FFT size
+    double[] lobe;              // the window's spectrum, from -LOBE to LOBE bins, LOBE_RESOLUTION entries per bin, then zeros
+    double[] gain;              // triangle / Blackman-Harris / size, for offsets -hop ... hop from the frame center
+    double decay;               // how much of the old amplitude remains after one hop of smoothing
+    int threshold;              // the fewest live partials for which we build a voice with this engine
+
+    // Per-voice buffers.  Each voice is built by only one per-output thread at a time, so they don't need locking.
+    double[][] real;
+    double[][] imag;
+    double[][] tails;           // the second half of the previous frame, already windowed
+    boolean[] primed;           // whether tails holds the previous block's frame, that is, whether we built it last block
+
+    /** HOP is the length of every block we'll be asked to build, that is, Output.getSkip().  Output.loadOscillators()
+        checks that it's at least MINIMUM_HOP, and reports it once there if it isn't.  Voices with fewer than
+        THRESHOLD live partials in a block are built with the standard engine. */
+    public SpectralOscillators(Output output, int hop, int threshold)
+        {
+        this.output = output;
+        this.hop = hop;
+        this.threshold = threshold;
+        size = Integer.highestOneBit(hop * 4 - 1) * 2;         // smallest power of 2 >= 4 * hop
+        fft = new FFT.InPlace(size);
+        decay = Math.pow(Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, hop);
+
+        // Build the window, centered at 0 and zero at -size/2 so that its spectrum is real and even
+        double[] window = new double[size];
+        for(int m = -size / 2 + 1; m < size / 2; m++)
+            {
+            double x = Output.PI2 * (m + size / 2) / size;
+            window[m + size / 2] = BH0 - BH1 * Math.cos(x) + BH2 * Math.cos(2 * x) - BH3 * Math.cos(3 * x);
+            }
+
+        // The zeros at the end let buildSamples() always run over LOBE_BINS bins, even when the lobe only touches LOBE_BINS - 1
+        lobe = new double[(LOBE_BINS + 1) * LOBE_RESOLUTION + 1];
+        for(int i = 0; i < 2 * LOBE * LOBE_RESOLUTION; i++)
+            {
+            double delta = i / (double) LOBE_RESOLUTION - LOBE;
+            double sum = 0;
+            for(int m = -size / 2 + 1; m < size / 2; m++)
+                sum += window[m + size / 2] * Math.cos(Output.PI2 * delta * m / size);
+            lobe[i] = sum;
+            }
+
+        gain = new double[hop * 2 + 1];
+        for(int m = -hop; m <= hop; m++)
+            {
+            double triangle = 1.0 - Math.abs(m) / (double) hop;
+            gain[m + hop] = triangle / window[m + size / 2] / size;
+            }
+
+        int numVoices = Output.getNumVoices();
+        real = new double[numVoices][size];
+        imag = new double[numVoices][size];
+        tails = new double[numVoices][hop];
+        primed = new boolean[numVoices];
+        }
+
+    public String getName() { return "Spectral (FFT size " + size + ")"; }
+
+    public void buildSamples(int s, double[] samples)
+        {
+        boolean recursive = (output.getSinQuality() == Output.SIN_QUALITY_RECURSIVE);
+        if (output.partials[s].count < threshold)
+            {
+            // Too few partials to be worth it.  Our tail will be stale by the time we come back.
+            if (primed[s] && recursive)
+                positionsToPhasors(s);
+            primed[s] = false;
+            output.buildScalarSamples(s, samples);
+            return;
+            }
+            
+        double[] re = real[s];
+        double[] tail = tails[s];
+        double[] gain = this.gain;
+        int hop = this.hop;
+        int mask = size - 1;
+        
+        if (!primed[s])
+            {
+            // We've no frame to crossfade from, so the standard engine builds this block, and we
+            // build the frame for its last sample from where it left off, just for the next block.
+            output.buildScalarSamples(s, samples);
+            if (recursive)
+                phasorsToPositions(s);
+            buildFrame(s, false);
+            primed[s] = true;
+            for(int n = 0; n < hop; n++)
+                {
+                tail[n] = re[n + 1] * gain[n + 1 + hop];
+                }
+            return;
+            }
+
+        buildFrame(s, true);
+
+        // Overlap-add.  The first half of this frame fades in over the second half of the last one.
+        // Sample n is n + 1 - hop samples from this frame's center, and n + 1 from the last one's.
+        double v = output.with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        for(int n = 0; n < hop; n++)
+            {
+            samples[n] = (tail[n] + re[(n + 1 - hop) & mask] * gain[n + 1]) * v;
+            tail[n] = re[n + 1] * gain[n + 1 + hop];
+            }
+        }
+
+    // With SIN_QUALITY_RECURSIVE the standard engine advances the phasors rather than the positions, so when
+    // we hand voice S over to it, or take it back, we carry the phases across.  This is rare enough that
+    // the trigonometry doesn't matter.
+    void positionsToPhasors(int s)
+        {
+        double[] pos = output.positions[s];
+        double[] pc = output.phasorCos[s];
+        double[] ps = output.phasorSin[s];
+        for(int oi = 0; oi < pos.length; oi++)
+            {
+            pc[oi] = Math.cos(pos[oi] * Output.PI2);
+            ps[oi] = Math.sin(pos[oi] * Output.PI2);
+            }
+        }
+
+    void phasorsToPositions(int s)
+        {
+        double[] pos = output.positions[s];
+        double[] pc = output.phasorCos[s];
+        double[] ps = output.phasorSin[s];
+        for(int oi = 0; oi < pos.length; oi++)
+            {
+            double position = Math.atan2(ps[oi], pc[oi]) / Output.PI2;
+            pos[oi] = (position < 0 ? position + 1 : position);
+            }
+        }
+
+    // Builds the spectrum of voice S's frame centered on the last sample of this block, and inverse-transforms 
+    // it into real[s].  If ADVANCE is true, the positions and amplitudes are at the start of the block, and we
+    // advance them to its last sample, whose phases are those buildSample() would use for it, since it advances 
+    // the positions before computing each sample.  Otherwise the standard engine has already done so.
+    void buildFrame(int s, boolean advance)
+        {
+        Output.Swap _with = output.with;
+        PartialFrame frame = output.partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pos = output.positions[s];
+        double[] currentAmp = output.currentAmplitudes[s];
+        double pitch = _with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        double nyquistDividedByPitch = Output.NYQUIST / pitch;
+        boolean dephase = _with.dephase[s];
+        double[] mixing = Output.MIXING;
+        double[] re = real[s];
+        double[] im = imag[s];
+        double[] lobe = this.lobe;
+        int size = this.size;
+        int mask = size - 1;
+
+        for(int k = 0; k < size; k++)
+            {
+            re[k] = 0;
+            im[k] = 0;
+            }
+
+        // Only the first COUNT partials can be heard.  When not dephasing, the rest are advanced all at
+        // once by Output.advanceIdlePartials(), as in the other engines.
+        int count = frame.count;
+        if (advance && !dephase)
+            output.advanceIdlePartials(s, hop);
+            
+        for(int i = 0; i < count; i++)
+            {
+            double frequency = freq[i];
+            if (dephase && frequency > nyquistDividedByPitch)
+                break;
+
+            int oi = orders[i] & 0xFF;
+            double amplitude = currentAmp[oi];
+            double increment = frequency * tr;
+            double position = pos[oi];
+            if (advance)
+                {
+                amplitude = amplitude * decay + amp[i] * (1.0 - decay);
+                if (amplitude < Output.WELL_ABOVE_SUBNORMALS) amplitude = 0;
+                currentAmp[oi] = amplitude;
+                if (!dephase || amplitude > Output.MINIMUM_VOLUME)          // as in buildSample(), silent dephased partials don't advance
+                    {
+                    position = position + increment * hop;
+                    position = position - (int) position;
+                    pos[oi] = position;
+                    }
+                }
+
+            if (amplitude <= Output.MINIMUM_VOLUME || frequency > nyquistDividedByPitch)
+                continue;
+
+            // a sin(2 PI (phase + f m)) windowed has the spectrum
+            // (a / 2i) e^(i 2 PI phase) W(k - f size)  +  its mirror image at -k.
+            // We draw just the first term, doubled, and take the real part of the result.
+            double phase = Output.PI2 * position + (dephase ? mixing[oi] : 0.0);
+            double cReal = amplitude * Utility.fastSin(phase);
+            double cImag = -amplitude * Utility.fastCos(phase);
+
+            // The lobe's first bin is LOW, which is between LOBE and LOBE - 1 bins below the partial.  Every bin
+            // is the same fraction of a table entry from the next one, so we only work out the interpolation once.
+            double bin = increment * size;
+            int low = (int) Math.ceil(bin - LOBE);
+            double x = (low - bin + LOBE) * LOBE_RESOLUTION;
+            int index = (int) x;
+            double alpha = x - index;
+            for(int j = 0; j < LOBE_BINS; j++)
+                {
+                double w = lobe[index] + (lobe[index + 1] - lobe[index]) * alpha;
+                int k = (low + j) & mask;
+                re[k] += cReal * w;
+                im[k] += cImag * w;
+                index += LOBE_RESOLUTION;
+                }
+            }
+
+        // Only the real part of the result is used
+        fft.transform(re, im, false);
+        }
+    }
@@ -0,0 +1,133 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.locks.*;
+
+/**
+   A bounded single-producer / single-consumer ring of preallocated Swaps, which carries the
+   partials from the primary voice thread (the producer, in Output.go()) to the Sound Output thread
+   (the consumer, in Output.checkAndSwap()).  The voice thread may run up to LEAD frames ahead of the
+   output thread, which lets it absorb the occasional GC or JIT hiccup; with a LEAD of 1 this is the
+   original swap / with pair.
+
+   <p>The producer parks when the ring is full, rather than spinning.  The consumer may park for a
+   bounded time when the ring is empty; if nothing arrives it keeps the frame it already has and counts it
+   as repeated.  If the consumer has fallen behind, it may skip straight to the newest frame, counting
+   the ones it skipped as dropped.
+**/
+
+class SwapRing
+    {
+    Output.Swap[] frames;
+    int size;
+    // Number of frames ever published, and ever consumed.  The consumer's current frame is frames[consumed % size],
+    // the queued frames follow it, and the producer fills frames[(published + 1) % size].
+    volatile long published;
+    volatile long consumed;
+    // The producer or consumer, if it's parked (or about to park)
+    volatile Thread producer;
+    volatile Thread consumer;
+
+    volatile long dropped;
+    volatile long repeated;
+
+    /** Builds a ring whose producer may get LEAD frames ahead of the consumer. */
+    public SwapRing(int lead)
+        {
+        size = lead + 1;
+        frames = new Output.Swap[size];
+        for(int i = 0; i < size; i++)
+            frames[i] = new Output.Swap();
+        }
+
+    /** Returns how many frames the consumer has skipped to catch up. */
+    public long getDropped() { return dropped; }
+
+    /** Returns how many times the consumer found no new frame and reused its current one. */
+    public long getRepeated() { return repeated; }
+
+    /** Returns the consumer's current frame. */
+    public Output.Swap current() { return frames[(int)(consumed % size)]; }
+
+    /** Called by the producer.  Blocks until there's room, then returns the frame to fill.
+        Call publish() when you're done filling it. */
+    public Output.Swap acquire()
+        {
+        if (published + 1 - consumed >= size)
+            {
+            producer = Thread.currentThread();
+            while(published + 1 - consumed >= size)
+                {
+                LockSupport.park(this);
+                }
+            producer = null;
+            }
+        return frames[(int)((published + 1) % size)];
+        }
+
+    /** Called by the producer to hand over the frame returned by acquire(). */
+    public void publish()
+        {
+        published = published + 1;
+        Thread c = consumer;
+        if (c != null) LockSupport.unpark(c);
+        }
+
+    /** Called by the consumer.  Moves to the next frame and returns it, waiting up to NANOS nanoseconds
+        for one to arrive.  If none does, counts a repeat and returns null: the current frame is unchanged. */
+    public Output.Swap poll(long nanos)
+        {
+        if (published == consumed && nanos > 0)
+            {
+            long deadline = System.nanoTime() + nanos;
+            consumer = Thread.currentThread();
+            while(published == consumed)
+                {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                LockSupport.parkNanos(this, remaining);
+                }
+            consumer = null;
+            }
+
+        if (published == consumed)
+            {
+            repeated++;
+            return null;
+            }
+        return advance(consumed + 1);
+        }
+
+    /** Called by the consumer.  Moves to the newest frame, dropping any queued before it, and returns it,
+        or returns null if there is no new frame.  The dropped frames' reset requests are carried over. */
+    public Output.Swap pollLatest()
+        {
+        long latest = published;
+        if (latest == consumed)
+            {
+            repeated++;
+            return null;
+            }
+
+        Output.Swap swap = frames[(int)(latest % size)];
+        for(long f = consumed + 1; f < latest; f++)
+            {
+            boolean[] reset = frames[(int)(f % size)].reset;
+            for(int i = 0; i < reset.length; i++)
+                swap.reset[i] = swap.reset[i] || reset[i];
+            }
+        dropped += latest - consumed - 1;
+        return advance(latest);
+        }
+
+    Output.Swap advance(long frame)
+        {
+        consumed = frame;
+        Thread p = producer;
+        if (p != null) LockSupport.unpark(p);
+        return frames[(int)(frame % size)];
+        }
+    }
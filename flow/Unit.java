@@ -16,7 +16,7 @@ import java.util.*;
    and which moves with it if you rearrange the partials, perhaps to sort them by
    frequency.  There are NUM_PARTIALS partials all told.  They're not stored in a single
    array, but rather in three separate arrays, one for frequencies, one for amplitudes,
-   and one for orders.
+   and one for orders, which are held together in a PartialFrame.
         
    <p>Units can be attached to other Units to get partials from them.  The ports
    by which they are attached are their UNIT INPUT ports.  Units also provide partials
@@ -75,9 +75,7 @@ public class Unit extends Modulation
         defineModulationOutputs(new String[] { } );  // no modulation outputs in a Unit by default
         defineOutputs(new String[] { "Out" });
         numOutputs = 1;
-        amplitudes = new double[numOutputs][NUM_PARTIALS];
-        frequencies = new double[numOutputs][NUM_PARTIALS];
-        orders = new byte[numOutputs][NUM_PARTIALS];
+        allocateOutputs();
         outputNames = new String[] { DEFAULT_UNIT_OUT_NAME };
         constraintIn = Unit.NIL;
         constraint = CONSTRAINT_NONE;
@@ -107,10 +105,18 @@ public class Unit extends Modulation
     public void reset()
         {
         super.reset();
+        stamp++;
+        unshare();                      // take back our arrays, since we or our subclass may write into them
         if (clearOnReset)
             {
-            amplitudes = new double[numOutputs][NUM_PARTIALS];
-            frequencies = new double[numOutputs][NUM_PARTIALS];
+            for(int j = 0; j < numOutputs; j++)
+                {
+                PartialFrame own = ownedPartials[j];
+                own.amplitudes = new double[NUM_PARTIALS];
+                own.frequencies = new double[NUM_PARTIALS];
+                partials[j].amplitudes = own.amplitudes;
+                partials[j].frequencies = own.frequencies;
+                }
             standardizeFrequencies();
             }
         }
@@ -145,7 +151,7 @@ public class Unit extends Modulation
         super.go();
         if (pushOrders && inputs.length > 0)
             {
-            for(int i = 0; i < orders.length; i++)
+            for(int i = 0; i < partials.length; i++)
                 pushOrders(0, i);
             }
         }
@@ -153,19 +159,101 @@ public class Unit extends Modulation
         
         
         
+    ////// SKIPPING UNCHANGED WORK
+    
+    // Incremented whenever the outputs may have changed, that is, whenever go() is about to be called, or on reset()
+    int stamp;
+    // The stamps of the Unit inputs, and of the constraint input, when needsGo() was last called
+    int[] lastInputStamps;
+    
+    /** Returns a number which changes whenever this Unit's outputs may have changed. */
+    public int getStamp() { return stamp; }
+
+    public boolean needsGo()
+        {
+        boolean changed = super.needsGo();
+        if (changed) stamp++;
+        return changed;
+        }
+
+    boolean inputsChanged()
+        {
+        boolean changed = super.inputsChanged();
+        
+        int len = inputs.length;
+        if (lastInputStamps == null || lastInputStamps.length != len + 1)
+            {
+            lastInputStamps = new int[len + 1];
+            changed = true;
+            }
+        for(int i = 0; i <= len; i++)
+            {
+            int val = (i == len ? constraintIn.stamp : inputs[i].stamp);
+            if (val != lastInputStamps[i])
+                {
+                lastInputStamps[i] = val;
+                changed = true;
+                }
+            }
+        return changed;
+        }
+        
+    // The Unit in another Sound whose output arrays we're sharing, or null
+    Unit sharedFrom;
+    // Its stamp when we last took its arrays
+    int sharedStamp;
+
+    void share(Modulation from)
+        {
+        super.share(from);
+        Unit unit = (Unit)from;
+        if (unit != sharedFrom || unit.stamp != sharedStamp)
+            {
+            // These are pushed, not copied, so like any pushed arrays they're read-only
+            for(int j = 0; j < partials.length; j++)
+                {
+                PartialFrame frame = unit.partials[j];
+                partials[j].amplitudes = frame.amplitudes;
+                partials[j].frequencies = frame.frequencies;
+                partials[j].orders = frame.orders;
+                }
+            sharedFrom = unit;
+            sharedStamp = unit.stamp;
+            stamp++;
+            }
+        }
+
+    void unshare()
+        {
+        if (sharedFrom == null) return;
+        for(int j = 0; j < partials.length; j++)
+            {
+            ownAmplitudes(j);
+            ownFrequencies(j);
+            ownOrders(j);
+            }
+        sharedFrom = null;
+        stamp++;
+        dirty = true;
+        }
+        
+
     ////// OUTPUTS
+    ////
+    //// Each output port has a PartialFrame of amplitudes, frequencies, and orders arrays.  Any of the arrays
+    //// may be pushed from an input, in which case it belongs to another Unit and is read-only, or it may be 
+    //// our own.  Our own arrays are allocated once and kept in ownedPartials, so when we need to write
+    //// to a pushed array we copy it into our own array rather than cloning it.
 
     int numOutputs;
-    // The amplitudes of the various partials.
-    double[][] amplitudes;
-    // The frequencies of the various partials.
-    double[][] frequencies;
-    /* The orders of the various partials.  An order is an integer which uniquely represents that
+    /* The partials of each output port.  
+    
+       <p>The orders of the partials are integers which uniquely represent each
        partial.  For example, if you had four partials, they might have orders 0, 1, 2, 3, or
        perhaps 1, 3, 2, 0, or whatever, as long as each one is unique and they're ordered 0...n
        somehow.  These are basically unique "names" for your partials.
         
-       <p> The reason for this array is as follows.  Units are required to keep their
+       <p> The reason for the orders array is as follows.  Units are required to keep their
        partials in sorted order by frequency.  If you have a unit whose partials wander about,
        the sort ordering will change.  This means that certain units (notably Smooth) which
        need to keep track of which partials are which cannot rely on their order in the array
@@ -175,17 +263,76 @@ public class Unit extends Modulation
        <p>Note that orders is a byte array.  Thus if you want more than 256 partials you'll have
        to change this to a short array.
     */
-    byte[][] orders;
+    PartialFrame[] partials;
     String[] outputNames;
+    // Frames holding the arrays we allocated for each output port, whether or not they're currently in use
+    PartialFrame[] ownedPartials;
+    
+    // Allocates new arrays for each of our output ports, and records them as our own
+    void allocateOutputs()
+        {
+        partials = new PartialFrame[numOutputs];
+        for(int j = 0; j < numOutputs; j++)
+            partials[j] = new PartialFrame(new double[NUM_PARTIALS], new double[NUM_PARTIALS], new byte[NUM_PARTIALS]);
+        ownOutputs();
+        }
+
+    // Records the current output arrays as our own
+    void ownOutputs()
+        {
+        ownedPartials = new PartialFrame[partials.length];
+        for(int j = 0; j < partials.length; j++)
+            ownedPartials[j] = new PartialFrame(partials[j].frequencies, partials[j].amplitudes, partials[j].orders);
+        }
+    
+    /** Makes the amplitudes array of Unit Output Port J our own, copying the partials into it if the 
+        array had been pushed, and returns it.  The array may then be written to.  This doesn't allocate. */
+    public double[] ownAmplitudes(int j)
+        {
+        double[] own = ownedPartials[j].amplitudes;
+        double[] current = partials[j].amplitudes;
+        if (current != own)
+            {
+            System.arraycopy(current, 0, own, 0, own.length);
+            partials[j].amplitudes = own;
+            }
+        return own;
+        }
+
+    /** Makes the frequencies array of Unit Output Port J our own, copying the partials into it if the 
+        array had been pushed, and returns it.  The array may then be written to.  This doesn't allocate. */
+    public double[] ownFrequencies(int j)
+        {
+        double[] own = ownedPartials[j].frequencies;
+        double[] current = partials[j].frequencies;
+        if (current != own)
+            {
+            System.arraycopy(current, 0, own, 0, own.length);
+            partials[j].frequencies = own;
+            }
+        return own;
+        }
+
+    /** Makes the orders array of Unit Output Port J our own, copying the partials into it if the 
+        array had been pushed, and returns it.  The array may then be written to.  This doesn't allocate. */
+    public byte[] ownOrders(int j)
+        {
+        byte[] own = ownedPartials[j].orders;
+        byte[] current = partials[j].orders;
+        if (current != own)
+            {
+            System.arraycopy(current, 0, own, 0, own.length);
+            partials[j].orders = own;
+            }
+        return own;
+        }
     
     /** Defines the UNIT OUTPUT ports by their names. */
     public void defineOutputs(String[] names)
         {
         numOutputs = names.length;
         outputNames = names;
-        amplitudes = new double[numOutputs][NUM_PARTIALS];
-        frequencies = new double[numOutputs][NUM_PARTIALS];
-        orders = new byte[numOutputs][NUM_PARTIALS];
+        allocateOutputs();
         standardizeFrequencies();
         }
     
@@ -205,23 +352,21 @@ public class Unit extends Modulation
         Unit in this category).  */
     public boolean showsOutputs() { return true; }
     
-    /** Returns all amplitude arrays for partials of all unit output ports. */
-    public double[][] getAllAmplitudes() { return amplitudes; }
+    /** Returns the partials of all unit output ports. */
+    public PartialFrame[] getAllPartials() { return partials; }
 
-    /** Returns all frequency arrays for partials of all unit output ports. */
-    public double[][] getAllFrequecies() { return frequencies; }
-
-    /** Returns all orders arrays for partials of all unit output ports. */
-    public byte[][] getAllOrders() { return orders; }
+    /** Returns the partials of the given unit output port.  Their arrays may have been pushed from an input,
+        so you should only write to them through ownAmplitudes(...) etc. */
+    public PartialFrame getPartials(int val) { return partials[val]; }
 
     /** Returns the amplitude array for the partials of the given unit output port. */
-    public double[] getAmplitudes(int val) { return amplitudes[val]; }
+    public double[] getAmplitudes(int val) { return partials[val].amplitudes; }
 
     /** Returns the frequency array for the partials of the given unit output port. */
-    public double[] getFrequencies(int val) { return frequencies[val]; }
+    public double[] getFrequencies(int val) { return partials[val].frequencies; }
  
     /** Returns the orders array for the partials of the given unit output port. */
-    public byte[] getOrders(int val) { return orders[val]; }
+    public byte[] getOrders(int val) { return partials[val].orders; }
     
     /** Override this to provide tooltips for unit outputs.  This array by default is null. 
         If any given String is null or empty, no tooltip is generated for it.  */
@@ -297,6 +442,8 @@ public class Unit extends Modulation
         {
         inputs[num] = in;
         inputIndexes[num] = index;
+        dirty = true;
+        if (sound != null) sound.invalidatePlan();
         }
                 
     /** Returns the unit attached to Unit Input Port NUM. */
@@ -334,6 +481,8 @@ public class Unit extends Modulation
         {
         inputs[num] = defaultInputs[num];
         inputIndexes[num] = 0;
+        dirty = true;
+        if (sound != null) sound.invalidatePlan();
         }
                 
     /** Returns the number of unit input ports. */
@@ -342,25 +491,32 @@ public class Unit extends Modulation
         return inputNames.length;
         }
 
+    /** Gets the partials provided by the Unit attached to Unit Input Port INPUT.
+        They should be treated as read-only. */
+    public PartialFrame getPartialsIn(int input)
+        {
+        return inputs[input].partials[inputIndexes[input]];
+        }
+
     /** Gets the frequencies array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public double[] getFrequenciesIn(int input)
         {
-        return inputs[input].frequencies[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].frequencies;
         }
                 
     /** Gets the amplitudes array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public double[] getAmplitudesIn(int input)
         {
-        return inputs[input].amplitudes[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].amplitudes;
         }
 
     /** Gets the orders array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public byte[] getOrdersIn(int input)
         {
-        return inputs[input].orders[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].orders;
         }
 
     /** Sets the frequencies array of Unit Output Port OUTPUT to 
@@ -368,7 +524,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushFrequencies(int input, int output)
         {
-        frequencies[output] = inputs[input].frequencies[inputIndexes[input]];
+        partials[output].frequencies = inputs[input].partials[inputIndexes[input]].frequencies;
         }
                 
     /** Sets the amplitudes array of Unit Output Port OUTPUT to 
@@ -376,7 +532,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushAmplitudes(int input, int output)
         {
-        amplitudes[output] = inputs[input].amplitudes[inputIndexes[input]];
+        partials[output].amplitudes = inputs[input].partials[inputIndexes[input]].amplitudes;
         }
 
     /** Sets the orders array of Unit Output Port OUTPUT to 
@@ -384,7 +540,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushOrders(int input, int output)
         {
-        orders[output] = inputs[input].orders[inputIndexes[input]];
+        partials[output].orders = inputs[input].partials[inputIndexes[input]].orders;
         }
                 
     /** Copies the frequencies array of Unit Output Port OUTPUT from 
@@ -392,12 +548,11 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyFrequencies(int input, int output)
         {
-        double[] f1 = inputs[input].frequencies[inputIndexes[input]];
-        double[] f2 = frequencies[output];
-        if (f1 == f2) 
-            frequencies[output] = (double[])(f1.clone());
-        else
+        double[] f1 = inputs[input].partials[inputIndexes[input]].frequencies;
+        double[] f2 = ownedPartials[output].frequencies;
+        if (f1 != f2)
             System.arraycopy(f1, 0, f2, 0, f2.length);
+        partials[output].frequencies = f2;
         //testDenormals(f2,  "" + this);                
         }
 
@@ -406,12 +561,11 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyAmplitudes(int input, int output)
         {
-        double[] f1 = inputs[input].amplitudes[inputIndexes[input]];
-        double[] f2 = amplitudes[output];
-        if (f1 == f2) 
-            amplitudes[output] = (double[])(f1.clone());
-        else
+        double[] f1 = inputs[input].partials[inputIndexes[input]].amplitudes;
+        double[] f2 = ownedPartials[output].amplitudes;
+        if (f1 != f2)
             System.arraycopy(f1, 0, f2, 0, f2.length);
+        partials[output].amplitudes = f2;
         //testDenormals(f2, "" + this);         
         }
                 
@@ -420,12 +574,11 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyOrders(int input, int output)
         {
-        byte[] f1 = inputs[input].orders[inputIndexes[input]];
-        byte[] f2 = orders[output];
-        if (f1 == f2) 
-            orders[output] = (byte[])(f1.clone());
-        else
+        byte[] f1 = inputs[input].partials[inputIndexes[input]].orders;
+        byte[] f2 = ownedPartials[output].orders;
+        if (f1 != f2)
             System.arraycopy(f1, 0, f2, 0, f2.length);
+        partials[output].orders = f2;
         }
 
     /** Sets the frequencies array of Unit Output Port #0 to 
@@ -487,9 +640,9 @@ public class Unit extends Modulation
     /** Sets the orders of the partials of all unit output ports such that order[i] = i. */
     public void setOrders()
         {
-        for(int j = 0; j < orders.length; j++)
+        for(int j = 0; j < partials.length; j++)
             {
-            byte[] o = orders[j];
+            byte[] o = partials[j].orders;
             for(int i = 0; i < o.length; i++)
                 o[i] = (byte)i;
             }
@@ -499,7 +652,7 @@ public class Unit extends Modulation
         a fairly large bound that is far from infinity.    */    
     public void boundAmplitudes(int j)
         {
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         for(int i = 0; i < a.length; i++)
             {
             // This is done in an odd order so that we properly check for NaN
@@ -522,7 +675,7 @@ public class Unit extends Modulation
         a fairly large bound that is far from infinity.    */    
     public void boundAmplitudes()
         {
-        for(int i = 0; i < amplitudes.length; i++)
+        for(int i = 0; i < partials.length; i++)
             boundAmplitudes(i);
         }
 
@@ -530,7 +683,7 @@ public class Unit extends Modulation
         frequency[i] is equal to i + 1.    */    
     public void standardizeFrequencies()
         {
-        for(int i = 0; i < frequencies.length; i++)
+        for(int i = 0; i < partials.length; i++)
             standardizeFrequencies(i);
         }
 
@@ -538,7 +691,7 @@ public class Unit extends Modulation
         frequency[i] is equal to i + 1.    */    
     public void standardizeFrequencies(int j)
         {
-        double[] f = frequencies[j];
+        double[] f = partials[j].frequencies;
         for(int i = 0; i < f.length; i++)
             f[i] = i + 1;
         }
@@ -547,7 +700,7 @@ public class Unit extends Modulation
         so that the largest one is 1.  If the amplitudes are all zero, they are left as zero. */
     public void maximizeAmplitudes()
         {
-        for(int i = 0; i < amplitudes.length; i++)
+        for(int i = 0; i < partials.length; i++)
             maximizeAmplitudes(i);
         }
 
@@ -555,7 +708,7 @@ public class Unit extends Modulation
         so that the largest one is 1.  If the amplitudes are all zero, they are left as zero. */
     public void maximizeAmplitudes(int j)
         {
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         double max = Math.abs(a[j]);
                 
         for(int i = 1; i < a.length; i++)
@@ -580,7 +733,7 @@ public class Unit extends Modulation
         so that they sum to 1.  If the amplitudes are all zero, they are left as zero. */
     public void normalizeAmplitudes()
         {
-        for(int i = 0; i < amplitudes.length; i++)
+        for(int i = 0; i < partials.length; i++)
             normalizeAmplitudes(i);
         }
 
@@ -589,7 +742,7 @@ public class Unit extends Modulation
     public void normalizeAmplitudes(int j)
         {
         double total = 0;
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         for(int i = 0; i < a.length; i++)
             {
             total += Math.abs(a[i]);
@@ -607,7 +760,7 @@ public class Unit extends Modulation
     /** Returns the partial from output unit port J whose frequency is lowest. */
     public int getLowestPartial(int j)
         {
-        double[] f = frequencies[j];
+        double[] f = partials[j].frequencies;
         double minimum = f[0];
         int val = 0;
         for(int i = 1; i < f.length; i++)
@@ -622,7 +775,7 @@ public class Unit extends Modulation
     /** Returns the partial from output unit port J whose amplitude is highest. */
     public int getLoudestPartial(int j)
         {
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         double maximum = a[0];
         int val = 0;
         for(int i = 1; i < a.length; i++)
@@ -635,123 +788,8 @@ public class Unit extends Modulation
         }
 
 
-    // Swaps partials i and j
-    void swap(int i, int j, double[] f, double[] a, byte[] o)
-        {
-        double d = f[i];
-        f[i] = f[j];
-        f[j] = d;
-        d = a[i];
-        a[i] = a[j];
-        a[j] = d;
-        byte e = o[i];
-        o[i] = o[j];
-        o[j] = e;
-        }
-
-    void swap(int i, int j, double[] f)
-        {
-        double d = f[i];
-        f[i] = f[j];
-        f[j] = d;
-        }
-
-    void swap(int i, int j, byte[] f)
-        {
-        byte d = f[i];
-        f[i] = f[j];
-        f[j] = d;
-        }
-
-    // standard insertion sort
-    void insertionSort(double freq[], double[] amp, byte[] order) 
-        {
-        int len = freq.length;
-        for (int i=1; i<len; i++) // Insert i'th record
-            for (int j=i; (j>0) && (freq[j] < freq[j-1]); j--)
-                {
-                //swap(j, j-1, freq, amp, order);
-                swap(j, j-1, freq);
-                swap(j, j-1, amp);
-                swap(j, j-1, order);
-                }
-        }
-    
-    // quicksort partition
-    int quicksortPartition(double freq[], double[] amp, byte[] order, int low, int high)
-        {
-        double pivot = freq[high];
-         
-        // index of smaller element
-        int i = (low-1); 
-        for (int j = low; j <= high-1; j++)
-            {
-            // If current element is smaller than or
-            // equal to pivot
-            if (freq[j] <= pivot)
-                {
-                i++;
-                //swap(i, j, freq, amp, order);
-                swap(i, j, freq);
-                swap(i, j, amp);
-                swap(i, j, order);
-                }
-            }
- 
-        // swap(i+1, high, freq, amp, order); 
-        swap(i+1, high, freq); 
-        swap(i+1, high, amp); 
-        swap(i+1, high, order); 
-        return i+1;
-        }
-
+    // Scratch space for PartialFrame.quickSort(...)
     int[] quickSortStack = null;
-    void quickSort (double freq[], double[] amp, byte[] order, int l, int h)
-        {
-        // Create an auxiliary stack
-        if (quickSortStack == null) quickSortStack = new int[h-l+1];
-  
-        // initialize top of stack
-        int top = -1;
-  
-        // push initial values of l and h to stack
-        quickSortStack[++top] = l;
-        quickSortStack[++top] = h;
-  
-        // Keep popping from stack while is not empty
-        while (top >= 0)
-            {
-            // Pop h and l
-            h = quickSortStack[top--];
-            l = quickSortStack[top--];
-  
-            // Set pivot element at its correct position
-            // in sorted array
-            int p = quicksortPartition(freq, amp, order, l, h);
-  
-            // If there are elements on left side of pivot,
-            // then push left side to stack
-            if (p-1 > l)
-                {
-                quickSortStack[++top] = l;
-                quickSortStack[++top] = p - 1;
-                }
-  
-            // If there are elements on right side of pivot,
-            // then push right side to stack
-            if (p+1 < h)
-                {
-                quickSortStack[++top] = p + 1;
-                quickSortStack[++top] = h;
-                }
-            }
-        }
-
-    // standard quicksort
-    void quickSort(double freq[], double amp[], byte order[])
-        {
-        quickSort(freq, amp, order, 0, freq.length - 1);
-        }
 
     /** Sorts the partials of Unit Output port by frequency. Returns TRUE if any elements potentially changed positions. 
     
@@ -763,16 +801,14 @@ public class Unit extends Modulation
         {
         if (copyAmplitudes)
             {
-            this.amplitudes[j] = this.amplitudes[j].clone();
+            ownAmplitudes(j);
             }
 
-        this.orders[j] = this.orders[j].clone();
+        ownOrders(j);
 
-        double[] frequencies = this.frequencies[j];
-        double[] amplitudes = this.amplitudes[j];
-        byte[] orders = this.orders[j];
-        
-        quickSort(frequencies, amplitudes, orders);
+        double[] frequencies = partials[j].frequencies;
+        if (quickSortStack == null) quickSortStack = new int[frequencies.length];
+        PartialFrame.quickSort(frequencies, partials[j].amplitudes, partials[j].orders, quickSortStack);
         return true;
         }
 
@@ -780,7 +816,7 @@ public class Unit extends Modulation
 
     public boolean outOfOrder(int j) 
         {
-        double[] frequencies = this.frequencies[j];
+        double[] frequencies = partials[j].frequencies;
         for(int i = 1; i < frequencies.length; i++)
             if (frequencies[i] < frequencies[i-1])
                 return true;
@@ -793,26 +829,17 @@ public class Unit extends Modulation
         {
         if (copyAmplitudes)
             {
-            this.amplitudes[j] = this.amplitudes[j].clone();
+            ownAmplitudes(j);
             }
         
-        this.orders[j] = this.orders[j].clone();
+        ownOrders(j);
 
-        double[] frequencies = this.frequencies[j];
-        double[] amplitudes = this.amplitudes[j];
-        byte[] orders = this.orders[j];
-        
-        insertionSort(frequencies, amplitudes, orders);
+        double[] frequencies = partials[j].frequencies;
+        PartialFrame.insertionSort(frequencies, partials[j].amplitudes, partials[j].orders, frequencies.length);
         return true;
         } 
         
 
-    // This is basically a somewhat better bubble sort.  I think bubble sort
-    // will likely be the best option in most cases because we won't have big
-    // frequency randomization.
-    //
-    // Modified from https://www.geeksforgeeks.org/cocktail-sort/
-        
     /** Sorts the partials of Unit Output port by frequency. Returns TRUE if any elements potentially changed positions.
         You might find this method more efficient than bigSort(...) when the partials are almost in sorted order, only
         differing by one or two positions. 
@@ -823,78 +850,14 @@ public class Unit extends Modulation
         only copied if indicated: you should pass in TRUE if you have not already copied the amplitudes, else FALSE.  */
     public boolean simpleSort2(int j, boolean copyAmplitudes) 
         {
-        boolean swapped = true;
-        boolean everSwapped = false;
-        
         if (copyAmplitudes)
             {
-            this.amplitudes[j] = this.amplitudes[j].clone();
+            ownAmplitudes(j);
             }
         
-        this.orders[j] = this.orders[j].clone();
+        ownOrders(j);
 
-        double[] frequencies = this.frequencies[j];
-        double[] amplitudes = this.amplitudes[j];
-        byte[] orders = this.orders[j];
-        
-        int start = 0;
-        int end = frequencies.length;
- 
-        while (swapped==true)
-            {
-            // reset the swapped flag on entering the 
-            // loop, because it might be true from a 
-            // previous iteration.
-            swapped = false;
- 
-            // loop from bottom to top same as
-            // the bubble sort
-            for (int i = start; i < end-1; ++i)
-                {
-                if (frequencies[i] > frequencies[i + 1])
-                    {
-//                    swap(i, i+1, frequencies, amplitudes, orders);
-                    swap(i, i+1, frequencies);
-                    swap(i, i+1, amplitudes);
-                    swap(i, i+1, orders);
-                    swapped = true;
-                    }
-                }
- 
-            // if nothing moved, then array is sorted.
-            if (swapped==false)
-                break;
- 
-            // otherwise, reset the swapped flag so that it
-            // can be used in the next stage
-            swapped = false;
- 
-            // move the end point back by one, because
-            // item at the end is in its rightful spot
-            end = end-1;
- 
-            // from top to bottom, doing the
-            // same comparison as in the previous stage
-            for (int i = end-1; i >=start; i--)
-                {
-                if (frequencies[i] > frequencies[i+1])
-                    {
-//                    swap(i, i+1, frequencies, amplitudes, orders);
-                    swap(i, i+1, frequencies);
-                    swap(i, i+1, amplitudes);
-                    swap(i, i+1, orders);
-                    swapped = true;
-                    }
-                }
- 
-            // increase the starting point, because
-            // the last stage would have moved the next
-            // smallest number to its rightful spot.
-            start = start+1;
-        
-            everSwapped = everSwapped || swapped;
-            }
-        return everSwapped;
+        return PartialFrame.cocktailSort(partials[j].frequencies, partials[j].amplitudes, partials[j].orders);
         }
     
     /*
@@ -1030,19 +993,19 @@ public class Unit extends Modulation
 
     /** Sets the constraints to the non-zero amplitude harmonics in the Unit attached to the given Unit Input Port whose output port is index.
         Setting to Unit.NIL indicates that the constraints are not based on these harmonics.  */
-    public void setConstraintIn(Unit constraintIn, int index) { this.constraintIn = constraintIn; this.constraintIndex = index; }
+    public void setConstraintIn(Unit constraintIn, int index) { this.constraintIn = constraintIn; this.constraintIndex = index; dirty = true; if (sound != null) sound.invalidatePlan(); }
     /** Returns the unit defining the constraints, if any, or Unit.NIL. */
     public Unit getConstraintIn() { return constraintIn; }
     /** Returns the output port of the Unit defining the constraints, if any. */
     public int getConstraintIndex() { return constraintIndex; }
     /** Sets the constraints to the given constraint type.  If you have called setConstraintIn(...),
         it takes precedence over these constraints. */
-    public void setConstraint(int constraint) { this.constraint = constraint; }
+    public void setConstraint(int constraint) { this.constraint = constraint; dirty = true; }
     /** Returns the constraint type.  If you have called setConstraintIn(...),
         it takes precedence over these constraints. */
     public int getConstraint() { return constraint; }
     /** Inverts the constraints (or not). */
-    public void setInvertConstraints(boolean invertConstraints) { this.invertConstraints = invertConstraints; }
+    public void setInvertConstraints(boolean invertConstraints) { this.invertConstraints = invertConstraints; dirty = true; }
     /** Returns whether the constraints are inverted or not. */
     public boolean getInvertConstraints() { return invertConstraints; }
 
@@ -1056,7 +1019,7 @@ public class Unit extends Modulation
                 {
                 // costly...
                                 
-                double[] c = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] c = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 int count = 0;
                 for(int i = 0; i < c.length; i++)
                     {
@@ -1084,7 +1047,7 @@ public class Unit extends Modulation
                 {
                 // costly...
                                 
-                double[] c = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] c = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 int count = 0;
                 for(int i = 0; i < c.length; i++)
                     {
@@ -1132,7 +1095,7 @@ public class Unit extends Modulation
                 
             if (!(getConstraintIn() instanceof Nil))
                 {
-                double[] constraintAmplitudes = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] constraintAmplitudes = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 for(int i = 0; i < frequencies.length; i++)
                     {
                     if (constraintAmplitudes[i] != 0)
@@ -1164,7 +1127,7 @@ public class Unit extends Modulation
 
             if (!(getConstraintIn() instanceof Nil))
                 {
-                double[] constraintAmplitudes = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] constraintAmplitudes = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 for(int i = 0; i < frequencies.length; i++)
                     {
                     if (constraintAmplitudes[i] == 0)
@@ -1350,18 +1313,13 @@ public class Unit extends Modulation
         // ---- Copy over unit outputs ----
         // Output Names
         obj.outputNames = (String[])(outputNames.clone());
-        // Amplitudes
-        obj.amplitudes = (double[][])(amplitudes.clone());
-        for(int i = 0; i < obj.amplitudes.length; i++)
-            obj.amplitudes[i] = (double[])(obj.amplitudes[i].clone());
-        // Frequencies
-        obj.frequencies = (double[][])(frequencies.clone());
-        for(int i = 0; i < obj.frequencies.length; i++)
-            obj.frequencies[i] = (double[])(obj.frequencies[i].clone());
-        // Orders
-        obj.orders = (byte[][])(orders.clone());
-        for(int i = 0; i < obj.orders.length; i++)
-            obj.orders[i] = (byte[])(obj.orders[i].clone());
+        // Partials
+        obj.partials = new PartialFrame[partials.length];
+        for(int i = 0; i < obj.partials.length; i++)
+            {
+            obj.partials[i] = new PartialFrame(partials[i].getCapacity());
+            obj.partials[i].copyFrom(partials[i]);
+            }
 
                 
         // ---- Copy over constraints.  We retain a pointer to the old constraint input if necessary.  So we just copy over the cached info. ----
@@ -1372,6 +1330,12 @@ public class Unit extends Modulation
         if (obj.constraintInPartials != null)
             obj.constraintInPartials = (int[])(obj.constraintInPartials.clone());
 
+        // Likewise its input stamps are stale, and it must have its own outputs rather than the original's
+        obj.lastInputStamps = null;
+        obj.sharedFrom = null;
+        obj.ownOutputs();
+        obj.quickSortStack = null;              // each voice may sort in its own thread
+
         return obj;
         }
 
@@ -472,6 +472,8 @@ public class AppMenu
 
     public static void doLoad(Rack rack, JSONObject obj, boolean clearSubpatches) throws Exception
         {
+        Events.PatchLoad event = new Events.PatchLoad();
+        event.begin();
         String[] patchName = new String[1];
         rack.getOutput().lock();
         int flowVersion = 0;
@@ -497,6 +499,8 @@ public class AppMenu
 
             // Create and update Modulations and create ModulePanels
             load(mods, rack, obj == null ? patchName[0] : Sound.loadName(obj));
+            event.patch = (obj == null ? patchName[0] : Sound.loadName(obj));
+            event.modules = (mods.length == 0 ? 0 : mods[0].length);
 
             // reload
             Output out = rack.getOutput();
@@ -527,6 +531,7 @@ public class AppMenu
             }
         rack.scrollToRight();
         ((Out.OutModulePanel)(rack.findOut())).updatePatchInfo();
+        event.commit();
         } 
 
 
@@ -860,6 +865,32 @@ public class AppMenu
         return display;
         }
 
+    static JMenuItem profileMenu(Rack rack)
+        {
+        final JCheckBoxMenuItem profile = new JCheckBoxMenuItem("Show Module Costs");
+        profile.addActionListener(new ActionListener()
+            {
+            public void actionPerformed(ActionEvent e)
+                {
+                rack.setProfiling(profile.isSelected());
+                }
+            });
+        return profile;
+        }
+
+    static JMenuItem profileWindowMenu(Rack rack)
+        {
+        JMenuItem profile = new JMenuItem("Module Profile...");
+        profile.addActionListener(new ActionListener()
+            {
+            public void actionPerformed(ActionEvent e)
+                {
+                new ProfileWindow(rack).setVisible(true);
+                }
+            });
+        return profile;
+        }
+
     static JMenuItem waterfallDisplay(Rack rack)
         {
         final JCheckBoxMenuItem waterfall = new JCheckBoxMenuItem("Waterfall Display");
@@ -1269,6 +1300,9 @@ public class AppMenu
 //        menu.add(minDisplayedHarmonic(rack));
         menu.add(showKeyboard(rack));
         menu.addSeparator();
+        menu.add(profileMenu(rack));
+        menu.add(profileWindowMenu(rack));
+        menu.addSeparator();
         menu.add(addModulesAfterMenu(rack));
         menu.add(setupPatchMenu(rack));
         menu.add(setupTuningMenu(rack));
@@ -224,6 +224,9 @@ public class Display extends JComponent
         return colors[(int) (Math.min(amplitude * NUM_COLORS, 255))];
         }
 
+    // The partials we're displaying, copied from the Unit so we can draw them without holding the lock
+    PartialFrame frame = new PartialFrame();
+    
     public void paintComponent(Graphics graphics)
         {
         double[] amplitudes = null;
@@ -254,8 +257,9 @@ public class Display extends JComponent
 
                     if (emit != null && emit instanceof Out && !(emit.getInput(incoming) instanceof Nil))
                         {
-                        amplitudes = (double[])(emit.getAmplitudes(incoming).clone());
-                        frequencies = (double[])(emit.getFrequencies(incoming).clone());
+                        frame.copyFrom(emit, incoming);
+                        amplitudes = frame.amplitudes;
+                        frequencies = frame.frequencies;
                         }
                     }
                 else
@@ -263,8 +267,9 @@ public class Display extends JComponent
                     Unit unit = getUnit(sound);
                     if (unit != null)
                         {
-                        amplitudes = (double[])(unit.getAmplitudes(0).clone());
-                        frequencies = (double[])(unit.getFrequencies(0).clone());
+                        frame.copyFrom(unit, 0);
+                        amplitudes = frame.amplitudes;
+                        frequencies = frame.frequencies;
                         }
                     }
                 }
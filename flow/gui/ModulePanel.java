@@ -31,6 +31,7 @@ public class ModulePanel extends JPanel implements Transferable
     JComponent title;
     
     JLabel titleLabel;
+    JLabel profileLabel;
     JComponent titlePanel;
     JScrollPane helpPanel;
     // It seems that Java's JTextPane, in HTML mode, doesn't handle word wraps
@@ -235,6 +236,20 @@ public class ModulePanel extends JPanel implements Transferable
         return titleLabel;
         }
 
+    /** Shows the module's cost per block, in microseconds, in the title bar, or hides it if MICROS is negative. */
+    public void setProfile(double micros)
+        {
+        if (micros < 0)
+            {
+            profileLabel.setVisible(false);
+            }
+        else
+            {
+            profileLabel.setText((micros < 10 ? String.format("%.1f", micros) : String.valueOf((int)Math.round(micros))) + "\u00B5s ");
+            profileLabel.setVisible(true);
+            }
+        }
+
     // Builds the title bar for the ModulePanel
     JComponent buildTitle()
         {
@@ -250,6 +265,13 @@ public class ModulePanel extends JPanel implements Transferable
         titleLabel.setFont(Style.SMALL_FONT());
         titlePanel.add(titleLabel, BorderLayout.CENTER);
         
+        profileLabel = new JLabel();
+        profileLabel.setForeground(getTitleForeground());
+        profileLabel.setFont(Style.SMALL_FONT());
+        profileLabel.setToolTipText("Time this module takes per block, summed over the sounding voices");
+        profileLabel.setVisible(false);
+        titlePanel.add(profileLabel, BorderLayout.EAST);
+        
         if (!(modulation instanceof Out))  // Out doesn't have a remove button
             {
             JButton removeButton = new JButton(I_CLOSE);
@@ -0,0 +1,103 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow.gui;
+
+import flow.*;
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+import javax.swing.table.*;
+
+/**
+   A window showing what each module in the patch costs per block, as a table which can be
+   sorted by clicking on its column headers.  It turns on the Output's profiling while it's open,
+   and updates itself every Rack.PROFILE_TIMER milliseconds.
+**/
+
+public class ProfileWindow extends JFrame
+    {
+    private static final long serialVersionUID = 1;
+
+    static final String[] COLUMNS = { "#", "Module", "\u00B5s / Block", "Voices", "% of Total" };
+
+    Rack rack;
+    ModuleProfiler.Entry[] entries = new ModuleProfiler.Entry[0];
+    double total;
+    AbstractTableModel model;
+    javax.swing.Timer timer;
+    boolean wasProfiling;
+
+    public ProfileWindow(final Rack rack)
+        {
+        super("Module Profile");
+        this.rack = rack;
+
+        model = new AbstractTableModel()
+            {
+            public int getRowCount() { return entries.length; }
+            public int getColumnCount() { return COLUMNS.length; }
+            public String getColumnName(int column) { return COLUMNS[column]; }
+            public Class<?> getColumnClass(int column) { return (column == 1 ? String.class : column == 0 || column == 3 ? Integer.class : Double.class); }
+            public Object getValueAt(int row, int column)
+                {
+                ModuleProfiler.Entry entry = entries[row];
+                switch(column)
+                    {
+                    case 0: return entry.index;
+                    case 1: return entry.name;
+                    case 2: return Math.round(entry.micros * 10) / 10.0;
+                    case 3: return entry.voices;
+                    default: return (total == 0 ? 0.0 : Math.round(entry.micros / total * 1000) / 10.0);
+                    }
+                }
+            };
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.getRowSorter().toggleSortOrder(2);
+        table.getRowSorter().toggleSortOrder(2);            // descending
+        table.setFont(Style.SMALL_FONT());
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JLabel note = new JLabel(" Each module's time per block is summed over the voices which are sounding. ");
+        note.setFont(Style.SMALL_FONT());
+        getContentPane().add(note, BorderLayout.SOUTH);
+
+        wasProfiling = rack.isProfiling();
+        rack.setProfiling(true);
+
+        timer = new javax.swing.Timer(Rack.PROFILE_TIMER, new ActionListener()
+            {
+            public void actionPerformed(ActionEvent evt)
+                {
+                update();
+                }
+            });
+        timer.start();
+        update();
+
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter()
+            {
+            public void windowClosed(WindowEvent e)
+                {
+                timer.stop();
+                if (!wasProfiling) rack.setProfiling(false);
+                }
+            });
+
+        pack();
+        setLocationRelativeTo(rack);
+        }
+
+    void update()
+        {
+        entries = ModuleProfiler.getProfile(rack.getOutput());
+        total = 0;
+        for(int i = 0; i < entries.length; i++)
+            total += entries[i].micros;
+        model.fireTableDataChanged();
+        }
+    }
@@ -37,6 +37,7 @@ import org.json.*;
 public class Rack extends JPanel
     {
     public static final int REPAINT_TIMER = 8000;               // every 8 seconds
+    public static final int PROFILE_TIMER = 500;                // every 1/2 second
     
     JScrollPane pane;
     Box box;
@@ -240,6 +241,52 @@ public class Rack extends JPanel
             }).start();
         }
     
+    javax.swing.Timer profileTimer;
+    
+    /** Turns on or off the Output's profiling, and the cost shown on each ModulePanel. */
+    public void setProfiling(boolean val)
+        {
+        output.setProfiling(val);
+        if (val && profileTimer == null)
+            {
+            profileTimer = new javax.swing.Timer(PROFILE_TIMER, new ActionListener() 
+                {
+                public void actionPerformed(ActionEvent evt) 
+                    {
+                    updateProfile();
+                    }
+                });
+            profileTimer.start();
+            }
+        else if (!val && profileTimer != null)
+            {
+            profileTimer.stop();
+            profileTimer = null;
+            }
+        updateProfile();
+        }
+        
+    /** Returns whether the Output is profiling. */
+    public boolean isProfiling() { return output.isProfiling(); }
+        
+    // Updates the cost shown on each ModulePanel
+    void updateProfile()
+        {
+        boolean profiling = output.isProfiling();
+        ModuleProfiler.Entry[] entries = (profiling ? ModuleProfiler.getProfile(output) : new ModuleProfiler.Entry[0]);
+        ModulePanel[] panels = getAllModulePanels();
+        for(int i = 0; i < panels.length; i++)
+            {
+            double micros = -1;
+            for(int j = 0; j < entries.length; j++)
+                {
+                if (entries[j].modulation == panels[i].getModulation())
+                    { micros = entries[j].micros; break; }
+                }
+            panels[i].setProfile(micros);
+            }
+        }
+
     public void rebuildSubpatches()
         {
         subpatchBox.removeAll();
@@ -1003,10 +1050,22 @@ public class Rack extends JPanel
         skipsCombo.setSelectedIndex(index);
 
         // Sine Quality
-        String[] sinQs = new String[] { "Low", "Medium", "High" };
+        String[] sinQs = new String[] { "Low", "Medium", "High", "Recursive" };
         JComboBox sinQCombo = new JComboBox(sinQs);
         int sinQuality = Prefs.getLastSinQuality();
         sinQCombo.setSelectedIndex(sinQuality);
+
+        // Synthesis Engine.  The vector engine isn't offered: it has measured slower than the standard engine
+        int[] engines = new int[] { Output.ENGINE_SCALAR, Output.ENGINE_BLOCK, Output.ENGINE_SPECTRAL };
+        String[] s_engines = new String[] { "Standard", "Block", "Spectral (IFFT)" };
+        JComboBox engineCombo = new JComboBox(s_engines);
+        int engine = Prefs.getLastEngine();
+        index = 0;
+        for(int i = 0; i < engines.length; i++)
+            {
+            if (engines[i] == engine) { index = i; break; }
+            }
+        engineCombo.setSelectedIndex(index);
         
         JCheckBox stereoCheckbox = new JCheckBox();
         stereoCheckbox.setSelected(Prefs.getLastStereo());
@@ -1016,8 +1075,8 @@ public class Rack extends JPanel
         b.add(Stretch.makeHorizontalStretch(), BorderLayout.CENTER);
 
         int result = showMultiOption(this, 
-            new String[] { "Polyphony", "Buffer Size Per Channel", "Partials", "Voices Per Thread", "Outputs Per Thread", "Samples Per Partials Update", "Sine Quality", "Stereo" }, 
-            new JComponent[] { voicesCombo, bufferSizeCombo, partialsCombo, voicesPerThreadCombo, outputsPerThreadCombo, skipsCombo, sinQCombo, b }, 
+            new String[] { "Polyphony", "Buffer Size Per Channel", "Partials", "Voices Per Thread", "Outputs Per Thread", "Samples Per Partials Update", "Sine Quality", "Synthesis Engine", "Stereo" }, 
+            new JComponent[] { voicesCombo, bufferSizeCombo, partialsCombo, voicesPerThreadCombo, outputsPerThreadCombo, skipsCombo, sinQCombo, engineCombo, b }, 
             "Tuning Parameters", 
             "<html>Parameter changes don't take effect<br>until the synthesizer is restarted.",
             new String[] { "Okay", "Reset", "Cancel", });
@@ -1032,6 +1091,7 @@ public class Rack extends JPanel
             Prefs.setLastStereo(stereoCheckbox.isSelected());
             Prefs.setLastSkip(skips[skipsCombo.getSelectedIndex()]);
             Prefs.setLastSinQuality(sinQCombo.getSelectedIndex());
+            Prefs.setLastEngine(engines[engineCombo.getSelectedIndex()]);
             }
         else if (result == 1) // RESET
             {
@@ -1043,6 +1103,7 @@ public class Rack extends JPanel
             Prefs.setLastStereo(Output.DEFAULT_STEREO);
             Prefs.setLastSkip(Output.DEFAULT_SKIP);
             Prefs.setLastSinQuality(Output.SIN_QUALITY_DEFAULT);
+            Prefs.setLastEngine(Output.ENGINE_DEFAULT);
             }
         else if (result == 2 || result == -1)           // CANCEL
             {
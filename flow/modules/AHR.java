@@ -272,6 +272,9 @@ public class AHR extends Modulation implements ModSource
         return modToLongRate(mod) * Output.SAMPLING_RATE;
         }
     
+    // Once DONE we just hold our final level
+    public boolean canSleep() { return state == DONE; }
+
     public void go()
         {
         super.go();
@@ -172,6 +172,10 @@ public class AKWF extends Unit implements UnitSource
         }
 
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
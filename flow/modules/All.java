@@ -27,4 +27,8 @@ public class All extends Unit implements UnitSource
             amplitudes[i] = 0.25;
             }
         }
+
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
     }
@@ -38,6 +38,8 @@ public class Choice extends Unit implements Miscellaneous
         SwingUtilities.invokeLater(new Runnable() { public void run() { m.updateText(); m.repaint(); } });
         }
 
+    public boolean hasSideEffects() { return true; }
+
     public void go()
         {
         super.go();
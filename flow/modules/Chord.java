@@ -167,6 +167,15 @@ public class Chord extends Unit
     double[][] _amps;
     int[] _pos;
     int lastChord = 0;                      // 0 ("no chord") is the default
+
+    public Object clone()
+        {
+        Chord obj = (Chord)(super.clone());
+        obj._freqs = null;
+        obj._amps = null;
+        obj._pos = null;
+        return obj;
+        }
     
     // If needed, create subarrays of partials, one for each chord note, all the same length,
     // such that they sum to >= NUM_PARTIALS.  Then assign partials to each subarray
@@ -181,6 +190,7 @@ public class Chord extends Unit
             _freqs = new double[chordSize][numPartials];
             _amps = new double[chordSize][numPartials];
             _pos = new int[chordSize];
+            lastChord = chord;
             }
                 
         double gain = modulate(MOD_GAIN);
@@ -290,6 +290,9 @@ public class DADSR extends Modulation implements ModSource
         return modToLongRate(mod) * Output.SAMPLING_RATE;
         }
     
+    // A One Shot keeps going after release, and a released envelope is still moving until it's DONE
+    public boolean canSleep() { return state == DONE; }
+
     public void go()
         {
         super.go();
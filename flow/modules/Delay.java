@@ -73,6 +73,9 @@ public class Delay extends Unit
             }
         }
         
+    // The delay lines may still hold partials which have yet to come out
+    public boolean canSleep() { return false; }
+
     public void go()
         {
         super.go();
@@ -110,10 +113,7 @@ public class Delay extends Unit
 
         // next roll in the laterDelay
         d = laterDelayBuf[laterDelayPos];
-        for(int i = 0; i < amplitudes.length; i++)
-            {
-            amplitudes[i] = d[i] * wet + amps[i] * (1.0 - wet);
-            }
+        PartialFrame.interpolate(amps, d, null, wet, amplitudes);
                 
         initialDelayPos++;
         if (initialDelayPos >= initialDelay)
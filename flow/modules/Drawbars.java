@@ -39,7 +39,7 @@ public class Drawbars extends Unit implements UnitSource, Presetable
 
     public static final int NUM_DRAWBARS = 11;
 
-    public void setPercussionType(int type) { percussionType = type; }
+    public void setPercussionType(int type) { percussionType = type; if (sound != null) sound.invalidatePlan(); }
     public int getPercussionType() { return percussionType; }
     public void setTuning(int val) { tuning = val; }
     public int getTuning() { return tuning; }
@@ -227,6 +227,12 @@ public class Drawbars extends Unit implements UnitSource, Presetable
     
     static final int[] drawbarPositions = new int[] { 0, 2, 1, 3, 4, 5, 6, 7, 9, 8, 11 };
     
+    // Percussion decays over time, so we're only stateless when it's finished
+    public boolean isStateless() { return percussion == 0; }
+
+    // Percussion is triggered by each voice's gate, so we're only voice independent without it
+    public boolean isVoiceIndependent() { return percussionType == 0; }
+
     public void go()
         {
         super.go();
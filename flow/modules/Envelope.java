@@ -414,6 +414,9 @@ public class Envelope extends Modulation implements ModSource
         return modToLongRate(mod) * Output.SAMPLING_RATE;
         }
     
+    // Until we're done we may still change, for example in a One Shot or a looping envelope
+    public boolean canSleep() { return state == DONE || state == NOT_STARTED; }
+
     public void go()
         {
         super.go();
@@ -322,7 +322,7 @@ public class Fatten extends Unit
                 if (lastOrders[i] != orders[i])
                     {
                     remap();
-                    lastOrders = (byte[])(getOrders(0).clone());
+                    System.arraycopy(getOrders(0), 0, lastOrders, 0, lastOrders.length);
                     break;
                     }
                 }
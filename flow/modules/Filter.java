@@ -165,6 +165,13 @@ public class Filter extends Unit
             }   
         }
        
+    // The pitch when go() was last called
+    double lastPitch;
+
+    public boolean isStateless() { return true; }
+    
+    protected boolean hasChanged() { return sound.getPitch() != lastPitch; }
+
     public void go()
         {
         super.go();
@@ -175,6 +182,7 @@ public class Filter extends Unit
         double[] amplitudes = getAmplitudes(0);
         double[] frequencies = getFrequencies(0);
         double pitch = sound.getPitch();
+        lastPitch = pitch;
                 
         double cutoff = modToFrequency(makeVeryInsensitive(modulate(MOD_CUTOFF))); // Note that this is in angular frequency, but we don't divide by 2 PI to get Hertz because that's done at the end of the day when we add up the sine waves
         if (cutoff < MINIMUM_FREQUENCY) cutoff = MINIMUM_FREQUENCY;  // so we're never 0
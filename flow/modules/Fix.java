@@ -35,6 +35,9 @@ public class Fix extends Modulation implements Miscellaneous
 
     int lastNoteCounter = -1;
     int lastNote = -1;
+
+    public boolean hasSideEffects() { return true; }
+
     public void go()
         {
         super.go();
@@ -35,6 +35,10 @@ public class Harmonics extends Unit implements UnitSource
         defineInputs( new Unit[] { Unit.NIL }, new String[] { "Source" });
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
@@ -129,6 +129,9 @@ public class Joy extends Modulation implements ModSource
         }
 
 
+    // Playback follows the clock whether or not a note is down
+    public boolean canSleep() { return false; }
+
     public void go()
         {
         super.go();
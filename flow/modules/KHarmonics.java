@@ -86,6 +86,10 @@ public class KHarmonics extends Unit implements UnitSource
         scan.close();
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
@@ -54,8 +54,8 @@ public class LFO extends Modulation implements ModSource
     int type;
     transient double randomPos;
     transient double oldRandomPos;
-    transient int firstTick = 0;
-    transient int lastTick = 0;
+    transient long firstTick = 0;
+    transient long lastTick = 0;
     transient double lastRate = Double.NaN;
     transient double bias = 0;
     transient double state;
@@ -323,6 +323,10 @@ public class LFO extends Modulation implements ModSource
     */
 
     boolean nextUpdateTrigger = false;
+
+    // An LFO keeps cycling, firing triggers, and taking random steps after the note is released
+    public boolean canSleep() { return false; }
+
     public void go()
         {
         super.go();
@@ -344,7 +348,7 @@ public class LFO extends Modulation implements ModSource
         // the rate will cause eccentricities in the waveform because we're basing this on
         // the position of the wave from the start, not the relative change.
                 
-        int currentTick = getSyncTick(sync);
+        long currentTick = getSyncTick(sync);
         
         // our time interval, stretched by [new] rate
         double pos = (modToRate(rate) * Output.INV_SAMPLING_RATE * (currentTick - firstTick));
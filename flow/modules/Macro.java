@@ -185,6 +185,22 @@ public class Macro extends Unit implements Cloneable
                 modules[i].release();
         }
    
+    public boolean hasSideEffects()
+        {
+        for(int i = 0; i < modules.length; i++)
+            if (modules[i].hasSideEffects())
+                return true;
+        return false;
+        }
+
+    public boolean canSleep()
+        {
+        for(int i = 0; i < modules.length; i++)
+            if (!modules[i].canSleep())
+                return false;
+        return true;
+        }
+
     public void go()
         {
         super.go();
@@ -205,7 +221,7 @@ public class Macro extends Unit implements Cloneable
         double note = sound.getNote();
 
         for(int i = 0; i < modules.length; i++)
-            modules[i].go();
+            if (modules[i].needsGo()) modules[i].go();
                 
         if (out != null)
             {
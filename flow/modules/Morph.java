@@ -368,10 +368,7 @@ public class Morph extends Unit
         
         if (morphFrequency)
             {
-            for(int i = 0; i < p1frequencies.length; i++)
-                {
-                frequencies[i] = (p2frequencies[morphTo[i]] * ramp) + (p1frequencies[i] * (1.0 - ramp));
-                }
+            PartialFrame.interpolate(p1frequencies, p2frequencies, morphTo, ramp, frequencies);
             }
         else 
             {
@@ -380,10 +377,7 @@ public class Morph extends Unit
                 
         if (morphAmplitude)
             {
-            for(int i = 0; i < p1amplitudes.length; i++)
-                {
-                amplitudes[i] = (p2amplitudes[morphTo[i]] * ramp) + (p1amplitudes[i] * (1.0 - ramp));
-                }
+            PartialFrame.interpolate(p1amplitudes, p2amplitudes, morphTo, ramp, amplitudes);
             }
         else 
             {
@@ -137,6 +137,9 @@ public class Noise extends Unit implements UnitSource
             freq[i] = freq[i] * invsum;
         }
 
+    // We draw new random partials every time
+    public boolean canSleep() { return false; }
+
     public void go()
         {
         int partials = (int)(modulate(MOD_PARTIALS) * Unit.NUM_PARTIALS);
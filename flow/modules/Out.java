@@ -130,7 +130,7 @@ public class Out extends Unit implements Miscellaneous
 
     public boolean showsOutputs() { return false; }
 
-    transient int targetNextTick = 0;
+    transient long targetNextTick = 0;
     public static final int TIME_INTERVAL = (int)(Output.SAMPLING_RATE / 500);         // the amount of time before we add into the modulation buffer
     public void go()
         {
@@ -164,7 +164,7 @@ public class Out extends Unit implements Miscellaneous
             // on their own.  And they also handle the gain.
             }
 
-        int tick = sound.getOutput().getTick();
+        long tick = sound.getOutput().getTick();
         if (macro == null)
             {
             double mod0 = modulate(MOD_OSC_1);
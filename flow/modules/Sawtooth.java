@@ -43,6 +43,10 @@ public class Sawtooth extends Unit implements UnitSource
         // normalizeAmplitudes();
         }
         
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
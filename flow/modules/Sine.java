@@ -49,6 +49,10 @@ public class Sine extends Unit implements UnitSource
     double lastMod = Double.NaN;
     int sine = 0;
         
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
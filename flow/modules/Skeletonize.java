@@ -52,6 +52,17 @@ public class Skeletonize extends Unit
         }
 
 
+    double[] upcuts = new double[NUM_PARTIALS];
+    double[] downcuts = new double[NUM_PARTIALS];
+
+    public Object clone()
+        {
+        Skeletonize obj = (Skeletonize)(super.clone());
+        obj.upcuts = new double[NUM_PARTIALS];
+        obj.downcuts = new double[NUM_PARTIALS];
+        return obj;
+        }
+
     public Skeletonize(Sound sound)
         {
         super(sound);
@@ -71,8 +82,8 @@ public class Skeletonize extends Unit
         
         double cut = 1.0 - modulate(MOD_CUT);
 
-        double[] upcuts = new double[amplitudes.length];
-        double[] downcuts = new double[amplitudes.length];  
+        double[] upcuts = this.upcuts;
+        double[] downcuts = this.downcuts;
         double c = 1.0;
         
         if (direction == DIRECTION_BOTH)
@@ -91,6 +91,9 @@ public class Smooth extends Unit
         if (!free) start = true;
         }
 
+    // A free Smooth carries its smoothed partials over into the next note, so it has to keep smoothing them
+    public boolean canSleep() { return !free; }
+
     public void go()
         {
         super.go();
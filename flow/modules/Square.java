@@ -35,6 +35,10 @@ public class Square extends Unit implements UnitSource //, Parameterizable
         buildPWM();
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
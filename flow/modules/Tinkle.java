@@ -128,6 +128,9 @@ public class Tinkle extends Unit implements UnitSource
             }
         }
                         
+    // Tinkles keep decaying and interpolating after the note is released
+    public boolean canSleep() { return false; }
+
     public void go()
         {
         super.go();
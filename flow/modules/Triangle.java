@@ -45,6 +45,10 @@ public class Triangle extends Unit implements UnitSource
         //System.err.println(amplitudes[0]);
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
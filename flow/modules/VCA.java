@@ -30,6 +30,10 @@ public class VCA extends Unit
         defineModulations(new Constant[] { Constant.ONE, Constant.HALF }, new String[] { "Mod", "Scale" });
         }
                 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
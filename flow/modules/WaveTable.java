@@ -102,6 +102,10 @@ public class WaveTable extends Unit implements UnitSource
             }
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
@@ -155,6 +159,7 @@ public class WaveTable extends Unit implements UnitSource
                 unit.waveTable = new double[wt.length][];
                 for(int j = 0; j < wt.length; j++)
                     unit.waveTable[j] = (double[]) wt[j].clone();
+                unit.setDirty();
                 }
             }
         }
@@ -387,6 +392,7 @@ public class WaveTable extends Unit implements UnitSource
                 if (j < NUM_PARTIALS) waveTable[i][j] = d;  // if we have fewer partials than is listed, we skip this one.
                 }
             }
+        setDirty();
         } 
         
     public String getModulationValueDescription(int modulation, double value, boolean isConstant)
@@ -526,6 +532,7 @@ public class WaveTable extends Unit implements UnitSource
                 }
                 
             f.close();
+            setDirty();
             }
         catch (IOException ex) { }
         }
@@ -97,6 +97,10 @@ public class Waves extends Unit implements UnitSource
         scan.close();
         }
 
+    public boolean isStateless() { return true; }
+
+    public boolean isVoiceIndependent() { return true; }
+
     public void go()
         {
         super.go();
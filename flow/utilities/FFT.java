@@ -151,6 +151,78 @@ public class FFT
         return newArray;
         }
 
+    /**
+     * A precomputed radix-2 complex FFT of a fixed size, done in place.  Unlike fft(...),
+     * it allocates nothing and computes no sines or cosines per call, so it's suitable for 
+     * use in the audio threads.  It is not normalized: a forward transform followed by an 
+     * inverse transform multiplies the input by n.  An InPlace may be shared among threads.
+     */
+    public static class InPlace
+        {
+        int n;
+        int[] reverse;
+        double[] cos;
+        double[] sin;
+
+        public InPlace(int n)
+            {
+            if (n < 2 || (n & (n - 1)) != 0)
+                throw new IllegalArgumentException("The number of elements (" + n + ") is not a power of 2.");
+            this.n = n;
+            int nu = Integer.numberOfTrailingZeros(n);
+            reverse = new int[n];
+            for (int i = 0; i < n; i++)
+                reverse[i] = bitreverseReference(i, nu);
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int i = 0; i < n / 2; i++)
+                {
+                cos[i] = Math.cos(2 * Math.PI * i / n);
+                sin[i] = Math.sin(2 * Math.PI * i / n);
+                }
+            }
+
+        public int getSize() { return n; }
+
+        /** Transforms REAL and IMAG, each of length n, in place.  FORWARD uses e^(-i...), else e^(+i...). */
+        public void transform(double[] real, double[] imag, boolean forward)
+            {
+            int[] reverse = this.reverse;
+            for (int k = 0; k < n; k++)
+                {
+                int r = reverse[k];
+                if (r > k)
+                    {
+                    double t = real[k]; real[k] = real[r]; real[r] = t;
+                    t = imag[k]; imag[k] = imag[r]; imag[r] = t;
+                    }
+                }
+
+            double sign = (forward ? -1.0 : 1.0);
+            for (int size = 2; size <= n; size *= 2)
+                {
+                int half = size / 2;
+                int step = n / size;
+                for (int start = 0; start < n; start += size)
+                    {
+                    for (int j = 0; j < half; j++)
+                        {
+                        double c = cos[j * step];
+                        double s = sign * sin[j * step];
+                        int a = start + j;
+                        int b = a + half;
+                        double tReal = real[b] * c - imag[b] * s;
+                        double tImag = real[b] * s + imag[b] * c;
+                        real[b] = real[a] - tReal;
+                        imag[b] = imag[a] - tImag;
+                        real[a] += tReal;
+                        imag[a] += tImag;
+                        }
+                    }
+                }
+            }
+        }
+
     /**
      * The reference bitreverse function.
      */
@@ -24,11 +24,27 @@ package flow.utilities;
 public class FreeVerb {
         
     public float getWet() { return wet; }
-    public void setWet(float val) { wet = val; }
+    public void setWet(float val) { wet = val; update(); }
     public float getDamp() { return damp; }
-    public void setDamp(float val) { damp = val; }
+    public void setDamp(float val) { damp = val; update(); }
     public float getRoomSize() { return roomSize; }
-    public void setRoomSize(float val) { roomSize = val; } 
+    public void setRoomSize(float val) { roomSize = val; update(); } 
+
+    // The coefficients derived from the parameters, recomputed only when they change
+    float   fSlow0;
+    float   fSlow1 = 1;
+    float   fSlow2 = 0.7f;
+    float   fSlow3;
+    float   fSlow4 = 1;
+
+    void update()
+        {
+        fSlow0 = (0.4f * damp);
+        fSlow1 = (1 - fSlow0);
+        fSlow2 = (0.7f + (0.28f * roomSize));
+        fSlow3 = wet;
+        fSlow4 = (1 - fSlow3);
+        }
 
     float   damp;
     float   fRec9_0;
@@ -148,14 +164,15 @@ public class FreeVerb {
         }
 
 
-    /** This is the number of samples to read and write, with two channels. */
+    /** This is the number of samples to read and write, with two channels.  It's much cheaper to
+        call this once on a whole block than once per sample. */
         
     public void compute (int count, float[][] input, float[][] output) {
-        float   fSlow0 = (0.4f * damp);
-        float   fSlow1 = (1 - fSlow0);
-        float   fSlow2 = (0.7f + (0.28f * roomSize));
-        float   fSlow3 = wet;
-        float   fSlow4 = (1 - fSlow3);
+        float   fSlow0 = this.fSlow0;
+        float   fSlow1 = this.fSlow1;
+        float   fSlow2 = this.fSlow2;
+        float   fSlow3 = this.fSlow3;
+        float   fSlow4 = this.fSlow4;
         float[] input0 = input[0];
         float[] input1 = input[1];
         float[] output0 = output[0];
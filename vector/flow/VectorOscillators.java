@@ -0,0 +1,192 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import jdk.incubator.vector.*;
+
+/**
+   A SIMD version of Output.buildSample(), using the Java Vector API (jdk.incubator.vector).
+   Rather than walking the partials one at a time, it works on as many partials at once as
+   the machine's vector registers allow (typically 4 or 8 doubles).
+
+   <p>The standard engine reads the positions and smoothed amplitudes by ORDER, which would
+   require a gather on every sample.  Instead, at the start of each block we gather them once into
+   dense per-voice arrays, run the whole block over those, and scatter them back at the end.  The sine
+   is computed with a polynomial rather than a table lookup, so it also avoids gathering from the
+   sine table.  The polynomial is accurate to about 1e-7, so the result is not bit-identical to the
+   standard engine, but well below what 16-bit output can represent.  Since the polynomial is
+   always used, the sine quality setting is ignored.
+
+   <p>This class is only loaded, by reflection, if the user has chosen Output.ENGINE_VECTOR and the
+   JVM was started with --add-modules jdk.incubator.vector.  Otherwise Output falls back to the scalar engine.
+   It lives in vector/ rather than flow/ so that Flow still builds on a JDK without jdk.incubator.vector:
+   the Makefile compiles it in a separate step, which is skipped if the JDK doesn't have the module.
+**/
+
+class VectorOscillators implements Output.Oscillators
+    {
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+
+    // Odd Taylor coefficients of sin(y) for |y| <= PI/2, up to y^11.  Error is < 6e-8.
+    static final double S3 = -1.0 / 6.0;
+    static final double S5 = 1.0 / 120.0;
+    static final double S7 = -1.0 / 5040.0;
+    static final double S9 = 1.0 / 362880.0;
+    static final double S11 = -1.0 / 39916800.0;
+
+    Output output;
+    int length;                 // Unit.NUM_PARTIALS rounded up to a multiple of LANES
+
+    // Dense per-voice copies of the partials, in partial (not order) position.
+    // Each voice is built by only one per-output thread at a time, so they don't need locking.
+    double[][] densePositions;
+    double[][] denseAmplitudes;
+    double[][] denseTargets;        // target amplitudes, premultiplied by PARTIALS_INTERPOLATION_ALPHA
+    double[][] denseIncrements;     // phase increment per sample, in cycles
+    double[][] denseMixing;         // phase offset when dephasing, in cycles
+    double[][] denseGains;          // 1.0 if the partial is below Nyquist, else 0.0
+
+    public VectorOscillators(Output output)
+        {
+        this.output = output;
+        length = ((Unit.NUM_PARTIALS + LANES - 1) / LANES) * LANES;
+        int numVoices = Output.getNumVoices();
+        densePositions = new double[numVoices][length];
+        denseAmplitudes = new double[numVoices][length];
+        denseTargets = new double[numVoices][length];
+        denseIncrements = new double[numVoices][length];
+        denseMixing = new double[numVoices][length];
+        denseGains = new double[numVoices][length];
+        }
+
+    public String getName() { return "Vector (" + LANES + " lanes)"; }
+
+    public void buildSamples(int s, double[] samples)
+        {
+        Output.Swap _with = output.with;
+        PartialFrame frame = output.partials[s];
+        double[] amp = frame.amplitudes;
+        double[] freq = frame.frequencies;
+        byte[] orders = frame.orders;
+        double[] pos = output.positions[s];
+        double[] currentAmp = output.currentAmplitudes[s];
+        double v = _with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        double pitch = _with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        double nyquistDividedByPitch = Output.NYQUIST / pitch;
+        boolean dephase = _with.dephase[s];
+        double[] mixing = Output.MIXING;
+
+        double[] dp = densePositions[s];
+        double[] da = denseAmplitudes[s];
+        double[] dt = denseTargets[s];
+        double[] di = denseIncrements[s];
+        double[] dm = denseMixing[s];
+        double[] dg = denseGains[s];
+
+        // When dephasing, buildSample() stops at the first partial above Nyquist and leaves the rest alone.
+        // Otherwise we only gather the live partials, which come first, and advance the idle ones all at once.
+        int n = frame.count;
+        if (dephase)
+            {
+            for(int i = 0; i < n; i++)
+                {
+                if (freq[i] > nyquistDividedByPitch)
+                    { n = i; break; }
+                }
+            }
+        else
+            {
+            output.advanceIdlePartials(s, samples.length);
+            }
+
+        // Gather
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            dp[i] = pos[oi];
+            da[i] = currentAmp[oi];
+            dt[i] = amp[i] * Output.PARTIALS_INTERPOLATION_ALPHA;
+            di[i] = freq[i] * tr;
+            dm[i] = (dephase ? mixing[oi] / Output.PI2 : 0.0);
+            dg[i] = (freq[i] <= nyquistDividedByPitch ? 1.0 : 0.0);
+            }
+        for(int i = n; i < length; i++)            // silent padding
+            {
+            dp[i] = 0; da[i] = 0; dt[i] = 0; di[i] = 0; dm[i] = 0; dg[i] = 0;
+            }
+        int len = ((n + LANES - 1) / LANES) * LANES;
+
+        for(int samp = 0; samp < samples.length; samp++)
+            {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for(int i = 0; i < len; i += LANES)
+                {
+                DoubleVector amplitude = DoubleVector.fromArray(SPECIES, da, i)
+                    .mul(Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA)
+                    .add(DoubleVector.fromArray(SPECIES, dt, i));
+                amplitude = amplitude.blend(0.0, amplitude.lt(Output.WELL_ABOVE_SUBNORMALS));       // undenormalize
+                amplitude.intoArray(da, i);
+                VectorMask<Double> audible = amplitude.compare(VectorOperators.GT, Output.MINIMUM_VOLUME);
+
+                DoubleVector position = DoubleVector.fromArray(SPECIES, dp, i);
+                DoubleVector next = wrap(position.add(DoubleVector.fromArray(SPECIES, di, i)));
+                // When dephasing, silent partials don't advance
+                position = (dephase ? position.blend(next, audible) : next);
+                position.intoArray(dp, i);
+
+                DoubleVector phase = position;
+                if (dephase)
+                    {
+                    phase = phase.add(DoubleVector.fromArray(SPECIES, dm, i));
+                    phase = phase.sub(1.0, phase.compare(VectorOperators.GE, 1.0));
+                    }
+
+                DoubleVector val = sin(phase).mul(amplitude).mul(DoubleVector.fromArray(SPECIES, dg, i));
+                sum = sum.add(val.blend(0.0, audible.not()));
+                }
+            samples[samp] = sum.reduceLanes(VectorOperators.ADD) * v;
+            }
+
+        // Scatter
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            pos[oi] = dp[i];
+            currentAmp[oi] = da[i];
+            }
+        }
+
+    // Adding and subtracting 2^52 rounds a non-negative double to the nearest integer
+    static final double ROUNDER = 4503599627370496.0;
+    
+    /** Returns x - (int)x, as buildSample() does, for non-negative x.  We don't convert to longs
+        and back because many machines (such as those without AVX-512) can't do that in SIMD. */
+    static DoubleVector wrap(DoubleVector x)
+        {
+        DoubleVector r = x.add(ROUNDER).sub(ROUNDER);
+        r = r.sub(1.0, r.compare(VectorOperators.GT, x));          // round to nearest -> floor
+        return x.sub(r);
+        }
+
+    /** Returns sin(2 PI x) for 0 <= x < 1. */
+    static DoubleVector sin(DoubleVector x)
+        {
+        // sin(2 PI x) = -sin(2 PI u) where u = x - 1/2 is in [-1/2, 1/2).
+        // Then fold u into [-1/4, 1/4] using sin(PI - y) = sin(y).
+        DoubleVector u = x.sub(0.5);
+        u = u.blend(u.neg().add(0.5), u.compare(VectorOperators.GT, 0.25));
+        u = u.blend(u.neg().sub(0.5), u.compare(VectorOperators.LT, -0.25));
+        DoubleVector y = u.mul(-Output.PI2);
+        DoubleVector y2 = y.mul(y);
+        DoubleVector p = y2.mul(S11).add(S9);
+        p = p.mul(y2).add(S7);
+        p = p.mul(y2).add(S5);
+        p = p.mul(y2).add(S3);
+        p = p.mul(y2).add(1.0);
+        return p.mul(y);
+        }
+    }